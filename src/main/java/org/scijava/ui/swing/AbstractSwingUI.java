@@ -40,6 +40,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.lang.reflect.InvocationTargetException;
 
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
@@ -321,6 +322,30 @@ public abstract class AbstractSwingUI extends AbstractUserInterface implements
 
 	protected JMenuBar createConsoleMenu() {
 		final JMenuBar menuBar = new JMenuBar();
+		final JMenu file = new JMenu("File");
+		menuBar.add(file);
+		final JMenuItem fileSave = new JMenuItem("Save Console...");
+		fileSave.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				getConsolePane().showSaveDialog();
+			}
+		});
+		file.add(fileSave);
+		final JCheckBoxMenuItem fileTee = new JCheckBoxMenuItem("Tee to File...",
+			getConsolePane().getTeeFile() != null);
+		fileTee.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (fileTee.isSelected()) {
+					fileTee.setSelected(getConsolePane().showTeeDialog());
+				}
+				else getConsolePane().stopTee();
+			}
+		});
+		file.add(fileTee);
 		final JMenu edit = new JMenu("Edit");
 		menuBar.add(edit);
 		final JMenuItem editClear = new JMenuItem("Clear");
@@ -332,6 +357,36 @@ public abstract class AbstractSwingUI extends AbstractUserInterface implements
 			}
 		});
 		edit.add(editClear);
+		final JMenuItem editFind = new JMenuItem("Find...");
+		editFind.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				getConsolePane().showFindBar();
+			}
+		});
+		edit.add(editFind);
+		final JMenu view = new JMenu("View");
+		menuBar.add(view);
+		final JCheckBoxMenuItem viewStatistics =
+			new JCheckBoxMenuItem("Statistics", getConsolePane().isMetricsVisible());
+		viewStatistics.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				getConsolePane().setMetricsVisible(viewStatistics.isSelected());
+			}
+		});
+		view.add(viewStatistics);
+		final JMenuItem viewFiltered = new JMenuItem("Filtered View...");
+		viewFiltered.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				getConsolePane().showFilteredView();
+			}
+		});
+		view.add(viewFiltered);
 		return menuBar;
 	}
 
@@ -30,11 +30,10 @@
 
 package org.scijava.ui.swing.commands;
 
-import javax.swing.JOptionPane;
-
 import org.scijava.app.AppService;
 import org.scijava.command.Command;
 import org.scijava.command.ContextCommand;
+import org.scijava.log.LogService;
 import org.scijava.menu.MenuConstants;
 import org.scijava.module.ModuleInfo;
 import org.scijava.module.ModuleService;
@@ -42,7 +41,6 @@ import org.scijava.plugin.Attr;
 import org.scijava.plugin.Menu;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
-import org.scijava.ui.swing.SwingDialog;
 
 /**
  * A plugin to display the {@link CommandFinderPanel} in a dialog.
@@ -63,24 +61,26 @@ public class CommandFinder extends ContextCommand {
 	@Parameter
 	private AppService appService;
 
+	@Parameter
+	private LogService log;
+
+	@Parameter(required = false)
+	private CommandIndexService commandIndexService;
+
 	@Override
 	public void run() {
 		final String baseDir =
 			appService.getApp().getBaseDirectory().getAbsolutePath();
-		final CommandFinderPanel commandFinderPanel =
-			new CommandFinderPanel(moduleService, baseDir);
-		final SwingDialog dialog =
-			new SwingDialog(commandFinderPanel, JOptionPane.OK_CANCEL_OPTION,
-				JOptionPane.PLAIN_MESSAGE, false);
-		dialog.setFocus(commandFinderPanel.getSearchField());
-		dialog.setTitle("Find Commands");
-		final int rval = dialog.show();
-		if (rval != JOptionPane.OK_OPTION) return; // dialog canceled
-
-		final ModuleInfo info = commandFinderPanel.getCommand();
-		if (info == null) return; // no command selected
+		final CommandFinderDialog dialog;
+		if (commandIndexService != null) {
+			dialog = commandIndexService.acquireDialog(baseDir);
+		}
+		else dialog = new CommandFinderDialog(moduleService, baseDir, log);
+		final ModuleInfo info = dialog.show();
+		if (info == null) return; // dialog canceled, or no command selected
 
 		// execute selected command
+		if (commandIndexService != null) commandIndexService.commandUsed(info);
 		moduleService.run(info, true);
 	}
 
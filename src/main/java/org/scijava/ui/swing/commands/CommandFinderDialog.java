@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JOptionPane;
+
+import org.scijava.log.LogService;
+import org.scijava.module.ModuleInfo;
+import org.scijava.module.ModuleService;
+import org.scijava.thread.ThreadService;
+import org.scijava.ui.swing.SwingDialog;
+
+/**
+ * A dialog housing a {@link CommandFinderPanel}, which can be built ahead of
+ * time and shown again and again.
+ * <p>
+ * Each time the dialog is shown, the time from the request until the panel is
+ * first painted is logged at the debug level.
+ * </p>
+ */
+class CommandFinderDialog {
+
+	private final String baseDir;
+	private final ThreadService threadService;
+	private final LogService log;
+	private final CommandFinderPanel panel;
+	private final SwingDialog dialog;
+
+	/** Whether the dialog is currently in use. */
+	private final AtomicBoolean showing = new AtomicBoolean();
+
+	public CommandFinderDialog(final ModuleService moduleService,
+		final String baseDir, final LogService log)
+	{
+		this(moduleService, baseDir, log, new CommandFinderPanel(moduleService,
+			baseDir));
+	}
+
+	/**
+	 * Creates a dialog searching the given index, which must already be built,
+	 * so that the dialog can be created on the EDT without delay.
+	 *
+	 * @param usage Record of the commands run most, or null for none.
+	 */
+	CommandFinderDialog(final ModuleService moduleService, final String baseDir,
+		final LogService log, final CommandIndex index, final CommandUsage usage)
+	{
+		this(moduleService, baseDir, log, new CommandFinderPanel(moduleService,
+			baseDir, index, usage));
+	}
+
+	private CommandFinderDialog(final ModuleService moduleService,
+		final String baseDir, final LogService log,
+		final CommandFinderPanel panel)
+	{
+		this.baseDir = baseDir;
+		this.log = log;
+		this.panel = panel;
+		threadService = moduleService.getContext().service(ThreadService.class);
+		dialog = new SwingDialog(panel, JOptionPane.OK_CANCEL_OPTION,
+			JOptionPane.PLAIN_MESSAGE, false);
+		dialog.setFocus(panel.getSearchField());
+		dialog.setTitle("Find Commands");
+	}
+
+	// -- CommandFinderDialog methods --
+
+	/** Gets the base directory against which command files are shown. */
+	public String getBaseDir() {
+		return baseDir;
+	}
+
+	/** Gets the index of commands searched by the dialog. */
+	public CommandIndex getIndex() {
+		return panel.getIndex();
+	}
+
+	/**
+	 * Reserves the dialog to be shown.
+	 *
+	 * @return False if the dialog is already in use.
+	 */
+	public boolean acquire() {
+		return showing.compareAndSet(false, true);
+	}
+
+	/**
+	 * Shows the dialog, with a cleared search, until the user closes it, then
+	 * releases it.
+	 *
+	 * @return The chosen command, or null if the dialog was canceled.
+	 */
+	public ModuleInfo show() {
+		final long start = System.nanoTime();
+		try {
+			invoke(new Runnable() {
+
+				@Override
+				public void run() {
+					panel.reset();
+					panel.whenPainted(new Runnable() {
+
+						@Override
+						public void run() {
+							final long elapsed = System.nanoTime() - start;
+							log.debug("Find Commands painted after " + //
+								elapsed / 1000000 + " ms");
+						}
+					});
+				}
+			});
+			final int rval = dialog.show();
+			if (rval != JOptionPane.OK_OPTION) return null; // dialog canceled
+			return panel.getCommand();
+		}
+		finally {
+			showing.set(false);
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Runs the given code on the EDT, waiting for it to finish. */
+	private void invoke(final Runnable code) {
+		if (EventQueue.isDispatchThread()) {
+			code.run();
+			return;
+		}
+		try {
+			threadService.invoke(code);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		catch (final InvocationTargetException exc) {
+			throw new IllegalStateException(exc.getCause());
+		}
+	}
+
+}
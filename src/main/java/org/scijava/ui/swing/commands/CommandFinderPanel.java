@@ -33,6 +33,7 @@ package org.scijava.ui.swing.commands;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
@@ -42,8 +43,14 @@ import java.awt.event.MouseEvent;
 import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.ImageIcon;
 import javax.swing.JDialog;
@@ -54,8 +61,10 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableColumn;
@@ -67,12 +76,22 @@ import org.scijava.MenuEntry;
 import org.scijava.MenuPath;
 import org.scijava.module.ModuleInfo;
 import org.scijava.module.ModuleService;
+import org.scijava.thread.ThreadService;
 import org.scijava.util.ClassUtils;
 import org.scijava.util.FileUtils;
 
 /**
  * A panel that allows the user to search for SciJava commands. Based on the
  * original Command Finder plugin by Mark Longair and Johannes Schindelin.
+ * <p>
+ * Each word of the search text is matched fuzzily against the title, menu
+ * path, class name and description of each command, and the best matches are
+ * listed first. A word can be scoped to one of these fields, as in
+ * {@code class:Gauss}, to match it literally within that field only. The
+ * commands run most often and most recently from the finder rank higher. The
+ * search runs in the background, once the user pauses typing, so typing never
+ * waits for it; a search which is superseded by a newer one is canceled.
+ * </p>
  * 
  * @author Curtis Rueden
  * @author Johannes Schindelin
@@ -86,16 +105,71 @@ public class CommandFinderPanel extends JPanel implements ActionListener,
 	protected final JTable commandsList;
 	protected final CommandTableModel tableModel;
 
-	private final List<ModuleInfo> commands;
+	/** Maximum number of commands listed for a search. */
+	private static final int MAX_RESULTS = 1000;
+
+	/** Time to wait after a change to the search text before searching, in ms. */
+	private static final int SEARCH_DELAY = 100;
+
+	private final CommandIndex index;
+
+	/** Record of the commands run most, to rank them first; may be null. */
+	private final CommandUsage usage;
+
+	private final ThreadService threadService;
+
+	/** Timer which starts a search once the user pauses typing. */
+	private final Timer searchTimer;
+
+	/** The search whose results are awaited, or null if there is none. */
+	private SearchTask search;
+
+	/** Whether the listed commands do not reflect the search text yet. */
+	private volatile boolean searchPending;
+
+	/** All matches for the last completed search, to narrow the next one. */
+	private volatile CommandIndex.Matches lastMatches;
+
+	/** Callback for the next time the panel is painted, or null. */
+	private Runnable paintCallback;
 
 	public CommandFinderPanel(final ModuleService moduleService,
 		final String baseDir)
 	{
-		commands = buildCommands(moduleService);
+		this(moduleService, baseDir, moduleService.getContext().getService(
+			CommandIndexService.class));
+	}
+
+	private CommandFinderPanel(final ModuleService moduleService,
+		final String baseDir, final CommandIndexService indexService)
+	{
+		this(moduleService, baseDir, indexService == null ? //
+			new CommandIndex(moduleService.getModules()) : indexService.getIndex(),
+			indexService == null ? null : indexService.getUsage());
+	}
+
+	/**
+	 * Creates a panel searching the given index, which must already be built,
+	 * so that a panel can be created on the EDT without delay.
+	 *
+	 * @param usage Record of the commands run most, or null for none.
+	 */
+	CommandFinderPanel(final ModuleService moduleService, final String baseDir,
+		final CommandIndex index, final CommandUsage usage)
+	{
+		this.index = index;
+		this.usage = usage;
+		threadService = moduleService.getContext().service(ThreadService.class);
+		searchTimer = new Timer(SEARCH_DELAY, this);
+		searchTimer.setRepeats(false);
 
 		setPreferredSize(new Dimension(800, 600));
 
 		searchField = new JTextField(12);
+		searchField.setToolTipText("<html>Type words to match against command " +
+			"titles, menus, classes and descriptions.<br>Prefix a word with " +
+			"<tt>title:</tt>, <tt>menu:</tt>, <tt>class:</tt> or " +
+			"<tt>description:</tt> to match it only there, literally.");
 		commandsList = new JTable(20, CommandTableModel.COLUMN_COUNT);
 		commandsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 		commandsList.setRowSelectionAllowed(true);
@@ -124,7 +198,7 @@ public class CommandFinderPanel extends JPanel implements ActionListener,
 
 		searchField.getDocument().addDocumentListener(this);
 
-		tableModel = new CommandTableModel(commands, baseDir);
+		tableModel = new CommandTableModel(allCommands(), baseDir, threadService);
 		commandsList.setModel(tableModel);
 		tableModel.setColumnWidths(commandsList.getColumnModel());
 
@@ -186,12 +260,20 @@ public class CommandFinderPanel extends JPanel implements ActionListener,
 
 	// -- CommandFinderPanel methods --
 
-	/** Gets the currently selected command. */
+	/**
+	 * Gets the currently selected command. If the list does not yet reflect the
+	 * latest search text, this is the best match for the search text instead.
+	 */
 	public ModuleInfo getCommand() {
-		if (tableModel.getRowCount() < 1) return null;
-		int selectedRow = commandsList.getSelectedRow();
-		if (selectedRow < 0) selectedRow = 0;
-		return tableModel.get(commandsList.convertRowIndexToModel(selectedRow));
+		if (searchPending) {
+			// NB: The search is still running; do not wait for it to be listed.
+			final int[] hit = new int[1];
+			final String[] query = CommandIndex.tokens(searchField.getText());
+			final CommandIndex.Matches matches = index.match(query, lastMatches);
+			return index.top(matches, boosts(), 1, hit) > 0 ? index.get(hit[0])
+				: null;
+		}
+		return selectedCommand();
 	}
 
 	/** Gets the {@link JTextField} component for specifying the search string. */
@@ -199,6 +281,11 @@ public class CommandFinderPanel extends JPanel implements ActionListener,
 		return searchField;
 	}
 
+	/**
+	 * @deprecated The search text is no longer treated as a regular expression;
+	 *             each of its whitespace-separated words is matched fuzzily.
+	 */
+	@Deprecated
 	public String getRegex() {
 		return ".*" + searchField.getText().toLowerCase() + ".*";
 	}
@@ -214,6 +301,45 @@ public class CommandFinderPanel extends JPanel implements ActionListener,
 		}
 	}
 
+	// -- Component methods --
+
+	@Override
+	public void paint(final Graphics g) {
+		super.paint(g);
+		final Runnable callback = paintCallback;
+		if (callback == null) return;
+		paintCallback = null;
+		callback.run();
+	}
+
+	// -- Internal methods --
+
+	/** Gets the index of commands searched by the panel. */
+	CommandIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Clears the search text and lists all commands, so that the panel can be
+	 * shown again. Must be called on the EDT.
+	 */
+	void reset() {
+		searchField.setText("");
+		searchTimer.stop();
+		if (search != null) search.cancel();
+		search = null;
+		searchPending = false;
+		lastMatches = null;
+		tableModel.setData(allCommands());
+		commandsList.clearSelection();
+		commandsList.scrollRectToVisible(commandsList.getCellRect(0, 0, true));
+	}
+
+	/** Calls the given callback after the panel is next painted, on the EDT. */
+	void whenPainted(final Runnable callback) {
+		paintCallback = callback;
+	}
+
 	// -- ActionListener methods --
 
 	@Override
@@ -240,53 +366,184 @@ public class CommandFinderPanel extends JPanel implements ActionListener,
 
 	// -- Helper methods --
 
-	/** Builds the master list of available commands. */
-	private List<ModuleInfo> buildCommands(final ModuleService moduleService) {
-		final List<ModuleInfo> list = new ArrayList<>();
-		list.addAll(moduleService.getModules());
-		Collections.sort(list);
-		return list;
+	/** Gets the command selected in the list, or else the first one listed. */
+	private ModuleInfo selectedCommand() {
+		if (tableModel.getRowCount() < 1) return null;
+		int selectedRow = commandsList.getSelectedRow();
+		if (selectedRow < 0) selectedRow = 0;
+		return tableModel.get(commandsList.convertRowIndexToModel(selectedRow));
 	}
 
-	/** Updates the list of visible commands. */
-	private void updateCommands() {
-		final ModuleInfo selected = commandsList.getSelectedRow() < 0 ? null : getCommand();
-		int counter = 0, selectedRow = -1;
-		final String regex = getRegex();
-		final List<ModuleInfo> matches = new ArrayList<>();
-		for (final ModuleInfo command : commands) {
-			if (!command.getMenuPath().toString().toLowerCase().matches(regex)) continue; // no match
-			matches.add(command);
-			if (command == selected) selectedRow = counter;
-			counter++;
-		}
-		tableModel.setData(matches);
-		if (selectedRow >= 0) {
-			commandsList.setRowSelectionInterval(selectedRow, selectedRow);
+	/** Lists all commands, the most used first. */
+	private List<ModuleInfo> allCommands() {
+		final int[] boosts = boosts();
+		if (boosts == null) return index.getCommands();
+		final int[] hits = new int[index.size()];
+		final CommandIndex.Matches all = index.match(new String[0], null);
+		final int count = index.top(all, boosts, hits.length, hits);
+		final List<ModuleInfo> commands = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			commands.add(index.get(hits[i]));
 		}
+		return commands;
+	}
+
+	/** Gets the score bonuses of frequently used commands, if known. */
+	private int[] boosts() {
+		return usage == null ? null : usage.boosts(index);
+	}
+
+	/**
+	 * Starts a search for the current search text in the background, canceling
+	 * any search still in progress.
+	 */
+	private void updateCommands() {
+		searchTimer.stop();
+		if (search != null) search.cancel();
+		search = new SearchTask(CommandIndex.tokens(searchField.getText()));
+		search.future = threadService.run(search);
 	}
 
 	/** Called when the search filter text field changes. */
 	private void filterUpdated() {
-		updateCommands();
+		// NB: Wait until the user pauses typing.
+		searchPending = true;
+		searchTimer.restart();
+	}
+
+	/** Lists the results of a search, unless it has been superseded. */
+	private void found(final SearchTask task, final List<ModuleInfo> matches) {
+		if (search != task) return; // canceled
+		search = null;
+		if (!searchTimer.isRunning()) searchPending = false;
+		final ModuleInfo selected = commandsList.getSelectedRow() < 0 ? null
+			: selectedCommand();
+		tableModel.setData(matches);
+		final int selectedRow = matches.indexOf(selected);
+		if (selectedRow >= 0) {
+			final int viewRow = commandsList.convertRowIndexToView(selectedRow);
+			commandsList.setRowSelectionInterval(viewRow, viewRow);
+		}
 	}
 
 	// -- Helper classes --
 
+	/** Searches the index in the background, then lists the results. */
+	private class SearchTask implements Runnable {
+
+		private final String[] query;
+		private Future<?> future;
+
+		public SearchTask(final String[] query) {
+			this.query = query;
+		}
+
+		@Override
+		public void run() {
+			final int limit = query.length == 0 ? index.size() : MAX_RESULTS;
+			final CommandIndex.Matches matches = index.match(query, lastMatches);
+			if (matches == null) return; // canceled
+			lastMatches = matches;
+			final int[] hits = new int[Math.min(limit, matches.size())];
+			final int count = index.top(matches, boosts(), hits.length, hits);
+			final List<ModuleInfo> commands = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				commands.add(index.get(hits[i]));
+			}
+			threadService.queue(new Runnable() {
+
+				@Override
+				public void run() {
+					found(SearchTask.this, commands);
+				}
+			});
+		}
+
+		/** Cancels the search, interrupting it if it is running. */
+		public void cancel() {
+			if (future != null) future.cancel(true);
+		}
+	}
+
+	/**
+	 * The table model listing the matching commands. The cells of each command
+	 * are computed once, when the command is first shown, and then remembered;
+	 * icon images are shared by all models, though each model has its own
+	 * labels, since a component belongs to one table. Since finding the file
+	 * which provides a command may need to load its class, files are found in
+	 * the background, when a thread service is given, one at a time by a
+	 * single task, and filled in once known, in batches.
+	 */
 	protected static class CommandTableModel extends AbstractTableModel {
 		public final static int COLUMN_COUNT = 8;
 
+		private static final int FILE_COLUMN = 5;
+
+		/**
+		 * Maximum number of ranges of rows reported as deleted or inserted by
+		 * {@link #setData}, beyond which all data is reported as changed.
+		 */
+		private static final int MAX_ROW_EVENTS = 32;
+
+		/** Icon images, or null if missing, by icon path; EDT only. */
+		private static final Map<String, ImageIcon> iconImages = new HashMap<>();
+
+		/** Icon labels, by icon path; EDT only. */
+		private final Map<String, JLabel> icons = new HashMap<>();
+
 		private final String baseDir;
+		private final ThreadService threadService;
 		private List<ModuleInfo> list;
 
+		/** Cells of each command shown so far; EDT only. */
+		private final Map<ModuleInfo, Object[]> rows = new HashMap<>();
+
+		/**
+		 * Row of each listed command, or null if the list changed since it was
+		 * last needed; EDT only.
+		 */
+		private Map<ModuleInfo, Integer> rowIndices;
+
+		/** Commands whose files are yet to be found, in the order shown. */
+		private final Queue<Lookup> lookups = new ConcurrentLinkedQueue<>();
+
+		/** Commands whose files were found, but are not yet shown. */
+		private final Queue<Lookup> located = new ConcurrentLinkedQueue<>();
+
+		/** Whether a task is finding files. */
+		private final AtomicBoolean locating = new AtomicBoolean();
+
+		/** Whether a task is queued on the EDT to show found files. */
+		private final AtomicBoolean showing = new AtomicBoolean();
+
 		public CommandTableModel(final List<ModuleInfo> list, final String baseDir) {
+			this(list, baseDir, null);
+		}
+
+		public CommandTableModel(final List<ModuleInfo> list,
+			final String baseDir, final ThreadService threadService)
+		{
 			this.list = list;
 			this.baseDir = baseDir;
+			this.threadService = threadService;
 		}
 
+		/**
+		 * Replaces the listed commands. Rather than reporting that all the data
+		 * changed, the model reports just the rows deleted and inserted to turn
+		 * the old list into the new one, keeping the longest run of commands
+		 * listed in the same order by both; so the table's row sorter and
+		 * selection are updated incrementally, and only changed rows are
+		 * repainted. If the lists differ in too many places, all the data is
+		 * reported as changed instead, which is then cheaper.
+		 */
 		public void setData(List<ModuleInfo> list) {
-			this.list = list;
-			fireTableDataChanged();
+			final List<ModuleInfo> old = this.list;
+			rowIndices = null;
+			if (old.isEmpty() || list.isEmpty() || !updateRows(old, list)) {
+				this.list = list;
+				fireTableDataChanged();
+			}
 		}
 
 		public void setColumnWidths(TableColumnModel columnModel) {
@@ -333,36 +590,234 @@ public class CommandFinderPanel extends JPanel implements ActionListener,
 
 		@Override
 		public Object getValueAt(int row, int column) {
-			final ModuleInfo info = list.get(row);
-			if (column == 0) {
-				final String iconPath = info.getIconPath();
-				if (iconPath == null) return null;
+			if (column < 0 || column >= COLUMN_COUNT) return null;
+			return cells(list.get(row))[column];
+		}
+
+		// -- Helper methods --
+
+		/**
+		 * Updates the list from the old commands to the new ones, reporting the
+		 * rows deleted and inserted along the way.
+		 *
+		 * @return False, without changing anything, if the lists differ in more
+		 *         than {@link #MAX_ROW_EVENTS} ranges of rows.
+		 */
+		private boolean updateRows(final List<ModuleInfo> old,
+			final List<ModuleInfo> list)
+		{
+			final boolean[] keep = keptRows(old, list);
+
+			// count the ranges of deleted and inserted rows
+			int events = 0;
+			for (int i = 0; i < old.size(); i++) {
+				if (!keep[i] && (i == 0 || keep[i - 1])) events++;
+			}
+			final Map<ModuleInfo, Boolean> kept = new IdentityHashMap<>();
+			for (int i = 0; i < old.size(); i++) {
+				if (keep[i]) kept.put(old.get(i), true);
+			}
+			boolean inserting = false;
+			for (final ModuleInfo info : list) {
+				final boolean insert = !kept.containsKey(info);
+				if (insert && !inserting) events++;
+				inserting = insert;
+			}
+			if (events > MAX_ROW_EVENTS) return false;
+
+			// delete rows, from the bottom up
+			final List<ModuleInfo> current = new ArrayList<>(old);
+			this.list = current;
+			for (int end = old.size() - 1; end >= 0; end--) {
+				if (keep[end]) continue;
+				int start = end;
+				while (start > 0 && !keep[start - 1]) start--;
+				current.subList(start, end + 1).clear();
+				fireTableRowsDeleted(start, end);
+				end = start;
+			}
+
+			// insert rows, from the top down
+			for (int start = 0; start < list.size(); start++) {
+				if (kept.containsKey(list.get(start))) continue;
+				int end = start;
+				while (end + 1 < list.size() && !kept.containsKey(list.get(end + 1))) {
+					end++;
+				}
+				current.addAll(start, list.subList(start, end + 1));
+				fireTableRowsInserted(start, end);
+				start = end;
+			}
+			return true;
+		}
+
+		/**
+		 * Chooses which of the old commands to keep: the longest run of them which
+		 * the new list also contains, in the same order.
+		 */
+		private static boolean[] keptRows(final List<ModuleInfo> old,
+			final List<ModuleInfo> list)
+		{
+			final Map<ModuleInfo, Integer> positions = new IdentityHashMap<>();
+			for (int i = 0; i < list.size(); i++) {
+				positions.put(list.get(i), i);
+			}
+			// find the longest increasing run of new positions, by patience sorting
+			final int[] tails = new int[old.size()];
+			final int[] previous = new int[old.size()];
+			final int[] position = new int[old.size()];
+			int length = 0;
+			for (int i = 0; i < old.size(); i++) {
+				final Integer pos = positions.get(old.get(i));
+				position[i] = pos == null ? -1 : pos;
+				if (pos == null) continue;
+				int lo = 0, hi = length;
+				while (lo < hi) {
+					final int mid = (lo + hi) >>> 1;
+					if (position[tails[mid]] < pos) lo = mid + 1;
+					else hi = mid;
+				}
+				previous[i] = lo > 0 ? tails[lo - 1] : -1;
+				tails[lo] = i;
+				if (lo == length) length++;
+			}
+			final boolean[] keep = new boolean[old.size()];
+			for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+				keep[i] = true;
+			}
+			return keep;
+		}
+
+		/** Gets the cells of the given command, computing them if needed. */
+		private Object[] cells(final ModuleInfo info) {
+			Object[] cells = rows.get(info);
+			if (cells != null) return cells;
+			cells = new Object[COLUMN_COUNT];
+			cells[0] = icon(info.getIconPath());
+			cells[1] = info.getTitle();
+			final MenuPath menuPath = info.getMenuPath();
+			cells[2] = menuPath == null ? "" : menuPath.getMenuString(false);
+			final MenuEntry menuLeaf = menuPath == null ? null : menuPath.getLeaf();
+			cells[3] = menuLeaf == null ? "" : menuLeaf.getAccelerator();
+			cells[4] = info.getDelegateClassName();
+			cells[6] = info.getDescription();
+			cells[7] = info.getPriority();
+			rows.put(info, cells);
+			if (threadService == null) cells[FILE_COLUMN] = file(info);
+			else locate(info, cells);
+			return cells;
+		}
+
+		/** Gets the label showing the icon at the given path, if any. */
+		private JLabel icon(final String iconPath) {
+			if (iconPath == null) return null;
+			if (icons.containsKey(iconPath)) return icons.get(iconPath);
+			if (!iconImages.containsKey(iconPath)) {
 				final URL iconURL = getClass().getResource(iconPath);
-				return iconURL == null ? null : new JLabel(new ImageIcon(iconURL));
+				iconImages.put(iconPath, iconURL == null ? null : new ImageIcon(
+					iconURL));
 			}
-			if (column == 1) return info.getTitle();
-			if (column == 2) {
-				final MenuPath menuPath = info.getMenuPath();
-				return menuPath == null ? "" : menuPath.getMenuString(false);
+			final ImageIcon image = iconImages.get(iconPath);
+			final JLabel icon = image == null ? null : new JLabel(image);
+			icons.put(iconPath, icon);
+			return icon;
+		}
+
+		/**
+		 * Finds the given command's file in the background, then shows it. All
+		 * files are found by a single task, so that showing many rows at once,
+		 * e.g. when sorting the whole index, does not start a thread per row.
+		 */
+		private void locate(final ModuleInfo info, final Object[] cells) {
+			lookups.add(new Lookup(info, cells));
+			if (locating.compareAndSet(false, true)) {
+				threadService.run(new Runnable() {
+
+					@Override
+					public void run() {
+						locateAll();
+					}
+				});
 			}
-			if (column == 3) {
-				final MenuPath menuPath = info.getMenuPath();
-				final MenuEntry menuLeaf = menuPath == null ? null : menuPath.getLeaf();
-				return menuLeaf == null ? "" : menuLeaf.getAccelerator();
+		}
+
+		/** Finds the files of all pending lookups, on the locating thread. */
+		private void locateAll() {
+			while (true) {
+				Lookup lookup;
+				while ((lookup = lookups.poll()) != null) {
+					lookup.file = file(lookup.info);
+					located.add(lookup);
+					if (showing.compareAndSet(false, true)) {
+						threadService.queue(new Runnable() {
+
+							@Override
+							public void run() {
+								showLocated();
+							}
+						});
+					}
+				}
+				locating.set(false);
+				// NB: A lookup may have been added after the queue was drained.
+				if (lookups.isEmpty() || !locating.compareAndSet(false, true)) return;
 			}
-			if (column == 4) return info.getDelegateClassName();
-			if (column == 5) {
-				final URL location = ClassUtils.getLocation(info.getDelegateClassName());
-				final File file = FileUtils.urlToFile(location);
-				final String path = file == null ? null : file.getAbsolutePath();
-				if (path != null && path.startsWith(baseDir)) {
-					return path.substring(baseDir.length() + 1);
+		}
+
+		/**
+		 * Shows the files found so far, on the EDT, reporting them as a single
+		 * update of the rows they span.
+		 */
+		private void showLocated() {
+			showing.set(false);
+			int first = Integer.MAX_VALUE, last = -1;
+			Lookup lookup;
+			while ((lookup = located.poll()) != null) {
+				lookup.cells[FILE_COLUMN] = lookup.file;
+				final Integer row = rowIndices().get(lookup.info);
+				if (row == null) continue;
+				first = Math.min(first, row);
+				last = Math.max(last, row);
+			}
+			if (first == last) fireTableCellUpdated(first, FILE_COLUMN);
+			else if (first < last) {
+				fireTableChanged(new TableModelEvent(this, first, last, FILE_COLUMN));
+			}
+		}
+
+		/** Gets the row of each listed command, indexing them if needed. */
+		private Map<ModuleInfo, Integer> rowIndices() {
+			if (rowIndices == null) {
+				rowIndices = new IdentityHashMap<>();
+				for (int i = 0; i < list.size(); i++) {
+					rowIndices.put(list.get(i), i);
 				}
-				return file;
 			}
-			if (column == 6) return info.getDescription();
-			if (column == 7) return info.getPriority();
-			return null;
+			return rowIndices;
+		}
+
+		/** Gets the file providing the given command, relative to the base. */
+		private Object file(final ModuleInfo info) {
+			final URL location = ClassUtils.getLocation(info.getDelegateClassName());
+			final File file = FileUtils.urlToFile(location);
+			final String path = file == null ? null : file.getAbsolutePath();
+			if (path != null && path.startsWith(baseDir)) {
+				return path.substring(baseDir.length() + 1);
+			}
+			return file;
+		}
+
+		/** A command whose file is to be found, with its cells. */
+		private static class Lookup {
+
+			private final ModuleInfo info;
+			private final Object[] cells;
+			private Object file;
+
+			public Lookup(final ModuleInfo info, final Object[] cells) {
+				this.info = info;
+				this.cells = cells;
+			}
 		}
 	}
 
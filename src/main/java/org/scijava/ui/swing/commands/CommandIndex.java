@@ -0,0 +1,558 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.scijava.MenuPath;
+import org.scijava.module.ModuleInfo;
+
+/**
+ * A searchable snapshot of the available commands, sorted in their natural
+ * order, along with normalized search keys for each.
+ * <p>
+ * The keys are computed once, when the index is built, so that each search
+ * only scans them; a search allocates nothing per command. A query matches a
+ * command when each of its whitespace-separated tokens occurs, ignoring case,
+ * as a subsequence of one of the command's title, menu path, class name or
+ * description. Matches are scored: consecutive characters and characters at
+ * the start of a word score higher, and a match in the title counts more than
+ * one in the menu path, which counts more than one in the class name or
+ * description. Only the best matches are kept, in a bounded heap, so that
+ * ranking costs O(n log k) for k results.
+ * </p>
+ * <p>
+ * A token can also be scoped to one field, as in {@code class:gauss}; it then
+ * matches only text which occurs literally in that field. Each field has a
+ * {@link TrigramIndex}, so commands whose field may contain the text are found
+ * by intersecting posting lists, and only those are scanned.
+ * </p>
+ * <p>
+ * When the user extends a query, as from "gau" to "gaus", only the commands
+ * which matched the shorter query can match the longer one; {@link #match}
+ * takes the earlier {@link Matches} to search only those.
+ * </p>
+ */
+class CommandIndex {
+
+	/** Index of the title among each command's searchable fields. */
+	public static final int TITLE = 0;
+
+	/** Index of the menu path among each command's searchable fields. */
+	public static final int MENU_PATH = 1;
+
+	/** Index of the class name among each command's searchable fields. */
+	public static final int CLASS_NAME = 2;
+
+	/** Index of the description among each command's searchable fields. */
+	public static final int DESCRIPTION = 3;
+
+	/** Number of searchable fields of each command. */
+	public static final int FIELD_COUNT = 4;
+
+	/** Names by which a token can be scoped to each field, as "class:". */
+	private static final String[] FIELD_NAMES = { "title", "menu", "class",
+		"description" };
+
+	/** Weight of a match in each field. */
+	private static final int[] WEIGHTS = { 4, 3, 2, 1 };
+
+	private static final int MATCH_SCORE = 16;
+	private static final int BOUNDARY_BONUS = 32;
+	private static final int CONSECUTIVE_BONUS = 24;
+	private static final int MAX_GAP_PENALTY = 8;
+
+	/** Commands are searched in blocks of this size, less one, between checks. */
+	private static final int CHECK_MASK = 4095;
+
+	private final List<ModuleInfo> commands;
+
+	/** Text of each field of each command, indexed by field, then command. */
+	private final String[][] text;
+
+	/** Lowercased characters of each field of each command. */
+	private final char[][][] keys;
+
+	/** Trigram index of each field. */
+	private final TrigramIndex[] trigrams;
+
+	public CommandIndex(final Collection<? extends ModuleInfo> modules) {
+		final List<ModuleInfo> list = new ArrayList<>(modules);
+		Collections.sort(list);
+		commands = Collections.unmodifiableList(list);
+		text = new String[FIELD_COUNT][list.size()];
+		keys = new char[FIELD_COUNT][list.size()][];
+		for (int i = 0; i < list.size(); i++) {
+			final ModuleInfo info = list.get(i);
+			final MenuPath menuPath = info.getMenuPath();
+			text[TITLE][i] = info.getTitle();
+			text[MENU_PATH][i] = menuPath == null ? null : menuPath.getMenuString();
+			text[CLASS_NAME][i] = info.getDelegateClassName();
+			text[DESCRIPTION][i] = info.getDescription();
+			for (int field = 0; field < FIELD_COUNT; field++) {
+				if (text[field][i] == null) text[field][i] = "";
+				keys[field][i] = lowercase(text[field][i]);
+			}
+		}
+		trigrams = new TrigramIndex[FIELD_COUNT];
+		for (int field = 0; field < FIELD_COUNT; field++) {
+			trigrams[field] = new TrigramIndex(keys[field]);
+		}
+	}
+
+	// -- CommandIndex methods --
+
+	/** Gets the indexed commands, in their natural order. */
+	public List<ModuleInfo> getCommands() {
+		return commands;
+	}
+
+	/** Gets the number of indexed commands. */
+	public int size() {
+		return commands.size();
+	}
+
+	/** Gets the command with the given index. */
+	public ModuleInfo get(final int index) {
+		return commands.get(index);
+	}
+
+	/**
+	 * Finds the best matches for the given query. Without any tokens, every
+	 * command matches, in natural order. The search stops early if the calling
+	 * thread is interrupted.
+	 *
+	 * @param query The tokens to match, as returned by {@link #tokens}.
+	 * @param limit The maximum number of matches to find.
+	 * @param hits Receives the indices of the best matches, best first; it must
+	 *          have room for {@code limit} elements.
+	 * @return The number of matches found, or -1 if the thread was interrupted.
+	 */
+	public int find(final String[] query, final int limit, final int[] hits) {
+		final Matches matches = match(query, null);
+		return matches == null ? -1 : top(matches, limit, hits);
+	}
+
+	/**
+	 * Finds all commands matching the given query, along with their scores. If
+	 * the query refines the query of the given earlier matches, only those
+	 * commands are searched, since no others can match. The search stops early
+	 * if the calling thread is interrupted.
+	 *
+	 * @param query The tokens to match, as returned by {@link #tokens}.
+	 * @param previous The matches of an earlier query, or null.
+	 * @return The matches, or null if the thread was interrupted.
+	 */
+	public Matches match(final String[] query, final Matches previous) {
+		final int[] fields = new int[query.length];
+		final String[] literals = new String[query.length];
+		parse(query, fields, literals);
+
+		// narrow the candidates using the earlier matches and the trigrams
+		final boolean narrow = previous != null && previous.isRefinedBy(query);
+		int[] candidates = narrow ? previous.indices : null;
+		int candidateCount = narrow ? previous.count : size();
+		for (int t = 0; t < query.length; t++) {
+			if (fields[t] < 0) continue;
+			final int[] found = trigrams[fields[t]].find(literals[t]);
+			if (found == null) continue; // too short to narrow the search
+			candidates = candidates == null ? found : //
+				intersect(candidates, candidateCount, found);
+			candidateCount = candidates == found ? found.length : candidates.length;
+		}
+
+		final int[] indices = new int[candidateCount];
+		final int[] scores = new int[candidateCount];
+		int count = 0;
+		for (int c = 0; c < candidateCount; c++) {
+			if ((c & CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+				return null;
+			}
+			final int index = candidates == null ? c : candidates[c];
+			final int score = score(fields, literals, index);
+			if (score < 0) continue;
+			indices[count] = index;
+			scores[count++] = score;
+		}
+		return new Matches(query, indices, scores, count);
+	}
+
+	/**
+	 * Selects the best of the given matches.
+	 *
+	 * @param limit The maximum number of matches to select.
+	 * @param hits Receives the indices of the best matches, best first; it must
+	 *          have room for {@code limit} elements.
+	 * @return The number of matches selected.
+	 */
+	public int top(final Matches matches, final int limit, final int[] hits) {
+		return top(matches, null, limit, hits);
+	}
+
+	/**
+	 * Selects the best of the given matches, adding a bonus to the score of
+	 * each command.
+	 *
+	 * @param boosts The bonus of each command, or null for none.
+	 * @param limit The maximum number of matches to select.
+	 * @param hits Receives the indices of the best matches, best first; it must
+	 *          have room for {@code limit} elements.
+	 * @return The number of matches selected.
+	 */
+	public int top(final Matches matches, final int[] boosts, final int limit,
+		final int[] hits)
+	{
+		if (matches.query.length == 0 && boosts == null) {
+			// NB: All scores are equal, so the matches are already in order.
+			final int count = Math.min(limit, matches.count);
+			System.arraycopy(matches.indices, 0, hits, 0, count);
+			return count;
+		}
+		final int[] scores = new int[limit];
+		int count = 0;
+		for (int m = 0; m < matches.count; m++) {
+			final int index = matches.indices[m];
+			final int score = matches.scores[m] + (boosts == null ? 0 : boosts[index]);
+			if (count < limit) {
+				// add to the heap
+				hits[count] = index;
+				scores[count] = score;
+				siftUp(hits, scores, count++);
+			}
+			else if (limit > 0 && score > scores[0]) {
+				// replace the worst match so far
+				hits[0] = index;
+				scores[0] = score;
+				siftDown(hits, scores, 0, count);
+			}
+		}
+		// sort the heap, best match first
+		for (int end = count - 1; end > 0; end--) {
+			swap(hits, scores, 0, end);
+			siftDown(hits, scores, 0, end);
+		}
+		return count;
+	}
+
+	/**
+	 * Scores how well the given command matches the given query.
+	 *
+	 * @return The score, or -1 if the command does not match.
+	 */
+	public int score(final String[] query, final int index) {
+		final int[] fields = new int[query.length];
+		final String[] literals = new String[query.length];
+		parse(query, fields, literals);
+		return score(fields, literals, index);
+	}
+
+	/** Splits the given search text into lowercased tokens. */
+	public static String[] tokens(final String text) {
+		final List<String> tokens = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			final boolean space = i == text.length() || //
+				Character.isWhitespace(text.charAt(i));
+			if (space && start >= 0) {
+				tokens.add(new String(lowercase(text.substring(start, i))));
+				start = -1;
+			}
+			else if (!space && start < 0) start = i;
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Splits each token of the query into the field to which it is scoped, or
+	 * -1 if it is not scoped, and the text to match.
+	 */
+	private static void parse(final String[] query, final int[] fields,
+		final String[] literals)
+	{
+		for (int t = 0; t < query.length; t++) {
+			fields[t] = field(query[t]);
+			literals[t] = literal(query[t], fields[t]);
+		}
+	}
+
+	/** Gets the field to which the given token is scoped, or -1 if none. */
+	private static int field(final String token) {
+		final int colon = token.indexOf(':');
+		if (colon <= 0) return -1;
+		for (int field = 0; field < FIELD_COUNT; field++) {
+			final String name = FIELD_NAMES[field];
+			if (name.length() == colon && token.startsWith(name)) return field;
+		}
+		return -1;
+	}
+
+	/** Gets the text to match of a token scoped to the given field. */
+	private static String literal(final String token, final int field) {
+		return field < 0 ? token : token.substring(FIELD_NAMES[field].length() + 1);
+	}
+
+	/** Scores the given command against a parsed query. */
+	private int score(final int[] fields, final String[] literals,
+		final int index)
+	{
+		int total = 0;
+		for (int t = 0; t < fields.length; t++) {
+			final String literal = literals[t];
+			if (literal.isEmpty()) continue; // nothing to match
+			if (fields[t] >= 0) {
+				// scoped token: match literally, within the field
+				final int field = fields[t];
+				final char[] key = keys[field][index];
+				if (!contains(key, literal)) return -1;
+				total += WEIGHTS[field] * score(literal, key, text[field][index]);
+				continue;
+			}
+			int best = -1;
+			for (int field = 0; field < FIELD_COUNT; field++) {
+				final int score = score(literal, keys[field][index], text[field][index]);
+				if (score >= 0) best = Math.max(best, WEIGHTS[field] * score);
+			}
+			if (best < 0) return -1;
+			total += best;
+		}
+		return total;
+	}
+
+	/** Gets whether the key contains the given text. */
+	private static boolean contains(final char[] key, final String text) {
+		final char first = text.charAt(0);
+		final int last = key.length - text.length();
+		for (int i = 0; i <= last; i++) {
+			if (key[i] != first) continue;
+			int j = 1;
+			while (j < text.length() && key[i + j] == text.charAt(j)) j++;
+			if (j == text.length()) return true;
+		}
+		return false;
+	}
+
+	/** Gets the elements common to two sorted lists. */
+	private static int[] intersect(final int[] a, final int aCount,
+		final int[] b)
+	{
+		final int[] result = new int[Math.min(aCount, b.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < aCount && j < b.length;) {
+			if (a[i] < b[j]) i++;
+			else if (a[i] > b[j]) j++;
+			else {
+				result[count++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Scores the best match of the token as a subsequence of the key, trying
+	 * each start of a word where the token's first character occurs.
+	 *
+	 * @return The score, or -1 if the token is not a subsequence of the key.
+	 */
+	private static int score(final String token, final char[] key,
+		final String text)
+	{
+		final char first = token.charAt(0);
+		int best = -1;
+		for (int start = 0; start < key.length; start++) {
+			if (key[start] != first) continue;
+			if (best >= 0 && !isBoundary(text, start)) continue;
+			final int score = score(token, key, text, start);
+			// NB: If the token does not fit here, it fits nowhere further on.
+			if (score < 0) break;
+			best = Math.max(best, score);
+		}
+		return best;
+	}
+
+	/** Scores the leftmost match of the token beginning at the given start. */
+	private static int score(final String token, final char[] key,
+		final String text, final int start)
+	{
+		int score = 0, previous = -1, t = 0;
+		for (int i = start; i < key.length && t < token.length(); i++) {
+			if (key[i] != token.charAt(t)) continue;
+			score += MATCH_SCORE;
+			if (isBoundary(text, i)) score += BOUNDARY_BONUS;
+			if (previous >= 0) {
+				if (i == previous + 1) score += CONSECUTIVE_BONUS;
+				else score -= Math.min(MAX_GAP_PENALTY, i - previous - 1);
+			}
+			previous = i;
+			t++;
+		}
+		return t == token.length() ? score : -1;
+	}
+
+	/**
+	 * Gets whether the given character starts a word: it follows a character
+	 * which is not a letter or digit, or it is an upper case letter following a
+	 * lower case one.
+	 */
+	private static boolean isBoundary(final String text, final int i) {
+		if (i == 0) return true;
+		final char c = text.charAt(i), p = text.charAt(i - 1);
+		if (!Character.isLetterOrDigit(p)) return Character.isLetterOrDigit(c);
+		return Character.isUpperCase(c) && Character.isLowerCase(p);
+	}
+
+	/**
+	 * Lowercases each character of the given text individually, so that
+	 * positions in the result correspond to positions in the text.
+	 */
+	private static char[] lowercase(final String text) {
+		final char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return chars;
+	}
+
+	/** Gets whether the characters of one token occur, in order, in another. */
+	private static boolean isSubsequence(final String token, final String of) {
+		int t = 0;
+		for (int i = 0; i < of.length() && t < token.length(); i++) {
+			if (of.charAt(i) == token.charAt(t)) t++;
+		}
+		return t == token.length();
+	}
+
+	// -- Heap methods --
+
+	/**
+	 * Compares two matches; the worse one is nearer the root of the heap. Of
+	 * matches with equal scores, the later command is the worse.
+	 */
+	private static boolean isWorse(final int[] hits, final int[] scores,
+		final int a, final int b)
+	{
+		return scores[a] < scores[b] || scores[a] == scores[b] && hits[a] > hits[b];
+	}
+
+	private static void siftUp(final int[] hits, final int[] scores, int i) {
+		while (i > 0) {
+			final int parent = (i - 1) / 2;
+			if (!isWorse(hits, scores, i, parent)) break;
+			swap(hits, scores, i, parent);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(final int[] hits, final int[] scores, int i,
+		final int size)
+	{
+		while (true) {
+			final int left = 2 * i + 1;
+			if (left >= size) break;
+			final int right = left + 1;
+			final int child = right < size && //
+				isWorse(hits, scores, right, left) ? right : left;
+			if (!isWorse(hits, scores, child, i)) break;
+			swap(hits, scores, i, child);
+			i = child;
+		}
+	}
+
+	private static void swap(final int[] hits, final int[] scores, final int a,
+		final int b)
+	{
+		final int hit = hits[a];
+		hits[a] = hits[b];
+		hits[b] = hit;
+		final int score = scores[a];
+		scores[a] = scores[b];
+		scores[b] = score;
+	}
+
+	// -- Helper classes --
+
+	/** The commands matching a query, in natural order, with their scores. */
+	public static class Matches {
+
+		private final String[] query;
+		private final int[] indices;
+		private final int[] scores;
+		private final int count;
+
+		private Matches(final String[] query, final int[] indices,
+			final int[] scores, final int count)
+		{
+			this.query = query;
+			this.indices = indices;
+			this.scores = scores;
+			this.count = count;
+		}
+
+		/** Gets the number of matching commands. */
+		public int size() {
+			return count;
+		}
+
+		/**
+		 * Gets whether the given query refines this one, so that every command
+		 * which matches it also matches this one. This is so if each token of
+		 * this query is matched by some token of the given query: an unscoped
+		 * token by any token whose text contains it as a subsequence, and a
+		 * scoped token by a token scoped to the same field whose text contains
+		 * it.
+		 */
+		public boolean isRefinedBy(final String[] refined) {
+			final int[] refinedFields = new int[refined.length];
+			final String[] refinedLiterals = new String[refined.length];
+			parse(refined, refinedFields, refinedLiterals);
+			for (final String token : query) {
+				final int field = field(token);
+				final String literal = literal(token, field);
+				if (literal.isEmpty()) continue; // matches everything
+				boolean found = false;
+				for (int t = 0; t < refined.length && !found; t++) {
+					found = field < 0 ? isSubsequence(literal, refinedLiterals[t]) : //
+						refinedFields[t] == field && refinedLiterals[t].contains(literal);
+				}
+				if (!found) return false;
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,343 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.Timer;
+
+import org.scijava.app.AppService;
+import org.scijava.event.EventHandler;
+import org.scijava.log.LogService;
+import org.scijava.module.ModuleInfo;
+import org.scijava.module.ModuleService;
+import org.scijava.module.event.ModulesAddedEvent;
+import org.scijava.module.event.ModulesRemovedEvent;
+import org.scijava.module.event.ModulesUpdatedEvent;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.SciJavaService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+import org.scijava.ui.event.UIShownEvent;
+
+/**
+ * Service which maintains the index of available commands searched by the
+ * {@link CommandFinderPanel}, so that the command finder opens without first
+ * having to gather and sort the modules.
+ * <p>
+ * The index is built in the background when the service is initialized, and
+ * rebuilt in the background whenever modules are added, removed or updated;
+ * bursts of such changes are coalesced into a single rebuild. If the index is
+ * requested while it is out of date, it is rebuilt on the spot.
+ * </p>
+ * <p>
+ * The service also records which commands are run from the command finder,
+ * in the file given by the {@link #USAGE_FILE_PROPERTY} system property, or
+ * else {@code .scijava/command-usage.txt} in the user's home directory, so
+ * that the commands used most often and most recently are ranked first.
+ * </p>
+ * <p>
+ * Shortly after a user interface is shown, once the application has had time
+ * to settle, the service also prepares a hidden Find Commands dialog in the
+ * background, which the {@link CommandFinder} then reuses, so that the dialog
+ * appears without delay. This can be disabled by setting the
+ * {@link #PREWARM_PROPERTY} system property to {@code false}.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class CommandIndexService extends AbstractService implements
+	SciJavaService
+{
+
+	/** System property specifying the file recording command usage. */
+	public static final String USAGE_FILE_PROPERTY =
+		"scijava.commands.usageFile";
+
+	/** System property specifying whether to prepare the dialog in advance. */
+	public static final String PREWARM_PROPERTY = "scijava.commands.prewarm";
+
+	/** Delay after the UI is shown before preparing the dialog, in ms. */
+	private static final int PREWARM_DELAY = 2000;
+
+	@Parameter
+	private ModuleService moduleService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private LogService log;
+
+	@Parameter(required = false)
+	private AppService appService;
+
+	/** The current index, or null if the modules have changed since. */
+	private volatile CommandIndex index;
+
+	/** Number of times the modules have changed. */
+	private long changes;
+
+	/** Whether a background rebuild has been requested but not yet begun. */
+	private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+	private CommandUsage usage;
+
+	/** The most recently prepared dialog, or null if there is none. */
+	private CommandFinderDialog dialog;
+
+	// -- CommandIndexService methods --
+
+	/** Gets the available commands, in their natural order. */
+	public List<ModuleInfo> getCommands() {
+		return getIndex().getCommands();
+	}
+
+	/**
+	 * Records that the given command was run from the command finder, so that
+	 * it is ranked higher in future searches.
+	 */
+	public void commandUsed(final ModuleInfo info) {
+		getUsage().used(info);
+	}
+
+	// -- Service methods --
+
+	@Override
+	public void initialize() {
+		rebuild();
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				getUsage().load();
+			}
+		});
+	}
+
+	// -- Internal methods --
+
+	/** Gets the index of the available commands, building it if needed. */
+	CommandIndex getIndex() {
+		final CommandIndex current = index;
+		return current == null ? build() : current;
+	}
+
+	/** Gets the record of command usage; it is read when first needed. */
+	synchronized CommandUsage getUsage() {
+		if (usage == null) {
+			final String path = System.getProperty(USAGE_FILE_PROPERTY);
+			final File file = path != null ? new File(path) : new File(System
+				.getProperty("user.home"), ".scijava" + File.separator +
+					"command-usage.txt");
+			usage = new CommandUsage(file, threadService, log);
+		}
+		return usage;
+	}
+
+	/**
+	 * Gets a Find Commands dialog for the given base directory, reserved for
+	 * the caller. The prepared dialog is reused if it is up to date and not
+	 * already in use; otherwise a new one is built. Must not be called on the
+	 * EDT, since the index may need to be built, and the usage record read.
+	 */
+	CommandFinderDialog acquireDialog(final String baseDir) {
+		final CommandIndex current = getIndex();
+		getUsage().load();
+		synchronized (this) {
+			if (dialog != null && dialog.getIndex() == current && //
+				dialog.getBaseDir().equals(baseDir) && dialog.acquire())
+			{
+				return dialog;
+			}
+		}
+		final CommandFinderDialog created = createDialog(baseDir, current);
+		created.acquire();
+		return created;
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(@SuppressWarnings("unused") final UIShownEvent evt) {
+		if (GraphicsEnvironment.isHeadless() || appService == null) return;
+		if (!Boolean.parseBoolean(System.getProperty(PREWARM_PROPERTY, "true"))) {
+			return;
+		}
+		synchronized (this) {
+			if (dialog != null) return;
+		}
+		// NB: Wait for the application to settle before doing any work.
+		final Timer timer = new Timer(PREWARM_DELAY, new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				prewarm();
+			}
+		});
+		timer.setRepeats(false);
+		timer.start();
+	}
+
+	@EventHandler
+	protected void onEvent(final ModulesAddedEvent evt) {
+		invalidate();
+	}
+
+	@EventHandler
+	protected void onEvent(final ModulesRemovedEvent evt) {
+		invalidate();
+	}
+
+	@EventHandler
+	protected void onEvent(final ModulesUpdatedEvent evt) {
+		invalidate();
+	}
+
+	// -- Helper methods --
+
+	/** Builds the index in the background, then the dialog on the EDT. */
+	private void prewarm() {
+		final String baseDir =
+			appService.getApp().getBaseDirectory().getAbsolutePath();
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				final Thread thread = Thread.currentThread();
+				final int priority = thread.getPriority();
+				thread.setPriority(Thread.MIN_PRIORITY);
+				final CommandIndex current;
+				try {
+					current = getIndex();
+					getUsage().load();
+				}
+				finally {
+					thread.setPriority(priority);
+				}
+				threadService.queue(new Runnable() {
+
+					@Override
+					public void run() {
+						synchronized (CommandIndexService.this) {
+							if (dialog != null) return;
+						}
+						createDialog(baseDir, current);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Builds a new dialog for the given index on the EDT, and keeps it for
+	 * reuse.
+	 */
+	private CommandFinderDialog createDialog(final String baseDir,
+		final CommandIndex current)
+	{
+		final CommandFinderDialog[] created = new CommandFinderDialog[1];
+		final Runnable create = new Runnable() {
+
+			@Override
+			public void run() {
+				created[0] = new CommandFinderDialog(moduleService, baseDir, log,
+					current, getUsage());
+			}
+		};
+		if (EventQueue.isDispatchThread()) create.run();
+		else {
+			try {
+				threadService.invoke(create);
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+			catch (final InvocationTargetException exc) {
+				throw new IllegalStateException(exc.getCause());
+			}
+		}
+		if (created[0] == null) {
+			throw new IllegalStateException("Interrupted building the dialog");
+		}
+		synchronized (this) {
+			dialog = created[0];
+		}
+		return created[0];
+	}
+
+	/** Discards the index, and schedules a rebuild. */
+	private void invalidate() {
+		synchronized (this) {
+			changes++;
+			index = null;
+		}
+		rebuild();
+	}
+
+	/** Schedules a background rebuild, unless one is already scheduled. */
+	private void rebuild() {
+		if (!rebuildPending.compareAndSet(false, true)) return;
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				rebuildPending.set(false);
+				if (index == null) build();
+			}
+		});
+	}
+
+	/**
+	 * Builds the index from the current modules. The index is kept unless the
+	 * modules changed while it was being built.
+	 */
+	private CommandIndex build() {
+		final long before;
+		synchronized (this) {
+			before = changes;
+		}
+		final CommandIndex built = new CommandIndex(moduleService.getModules());
+		synchronized (this) {
+			if (changes == before) index = built;
+		}
+		return built;
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.scijava.log.LogService;
+import org.scijava.module.ModuleInfo;
+import org.scijava.thread.ThreadService;
+
+/**
+ * A record of how often, and how recently, each command was run from the
+ * command finder, used to rank the commands a user runs most at the top.
+ * <p>
+ * For each command, by identifier, the record keeps a use count which decays
+ * exponentially with time, and the time of the last use. It is read from its
+ * file by {@link #load()}, off the EDT, and written back in the background
+ * after each use, one write at a time; uses which occur while a write is
+ * pending are written together.
+ * </p>
+ */
+class CommandUsage {
+
+	/** Time for a use count to decay by half, in milliseconds. */
+	private static final double HALF_LIFE = 30 * 24 * 60 * 60 * 1000.0;
+
+	/** Score bonus per doubling of a command's decayed use count. */
+	private static final int USAGE_WEIGHT = 256;
+
+	/** Decayed use count below which a command is forgotten. */
+	private static final double MIN_COUNT = 0.01;
+
+	private final File file;
+	private final ThreadService threadService;
+	private final LogService log;
+
+	/** The recorded uses, by command identifier, or null until read. */
+	private Map<String, Usage> usages;
+
+	/** Number of uses recorded since the record was read. */
+	private int changes;
+
+	private final AtomicBoolean writePending = new AtomicBoolean();
+
+	/** Lock held while writing the file, so that writes never overlap. */
+	private final Object writeLock = new Object();
+
+	/** The index for which {@link #boosts} were last computed, and when. */
+	private CommandIndex boostedIndex;
+	private int boostedChanges;
+	private int[] boosts;
+
+	public CommandUsage(final File file, final ThreadService threadService,
+		final LogService log)
+	{
+		this.file = file;
+		this.threadService = threadService;
+		this.log = log;
+	}
+
+	// -- CommandUsage methods --
+
+	/** Reads the record from its file, unless it has been read already. */
+	public void load() {
+		synchronized (this) {
+			if (usages != null) return;
+		}
+		// NB: Read without holding the lock, so that boosts() never waits on it.
+		final Map<String, Usage> read = read();
+		synchronized (this) {
+			if (usages == null) usages = read;
+		}
+	}
+
+	/** Records that the given command was just run. */
+	public void used(final ModuleInfo info) {
+		load();
+		synchronized (this) {
+			final long now = System.currentTimeMillis();
+			Usage usage = usages.get(info.getIdentifier());
+			if (usage == null) {
+				usage = new Usage();
+				usages.put(info.getIdentifier(), usage);
+			}
+			usage.count = usage.decayedCount(now) + 1;
+			usage.lastUsed = now;
+			changes++;
+		}
+		scheduleWrite();
+	}
+
+	/**
+	 * Gets the score bonus of each command in the given index, which grows
+	 * with the logarithm of the command's decayed use count.
+	 *
+	 * @return The bonuses, indexed like the commands, or null if the record has
+	 *         not been {@link #load() loaded} yet; the caller must not modify
+	 *         them.
+	 */
+	public synchronized int[] boosts(final CommandIndex index) {
+		if (usages == null) return null;
+		if (index == boostedIndex && changes == boostedChanges) return boosts;
+		final long now = System.currentTimeMillis();
+		final Map<String, Usage> all = usages;
+		final int[] result = new int[index.size()];
+		if (!all.isEmpty()) {
+			for (int i = 0; i < result.length; i++) {
+				final Usage usage = all.get(index.get(i).getIdentifier());
+				if (usage == null) continue;
+				final double count = usage.decayedCount(now);
+				result[i] = (int) (USAGE_WEIGHT * Math.log(1 + count) / Math.log(2));
+			}
+		}
+		boostedIndex = index;
+		boostedChanges = changes;
+		boosts = result;
+		return result;
+	}
+
+	// -- Helper methods --
+
+	private Map<String, Usage> read() {
+		final Map<String, Usage> result = new HashMap<>();
+		if (!file.exists()) return result;
+		try (final BufferedReader in = new BufferedReader(reader(file))) {
+			while (true) {
+				final String line = in.readLine();
+				if (line == null) break;
+				final String[] tokens = line.split("\t");
+				if (tokens.length != 3) continue; // malformed
+				final Usage usage = new Usage();
+				usage.count = Double.parseDouble(tokens[1]);
+				usage.lastUsed = Long.parseLong(tokens[2]);
+				result.put(tokens[0], usage);
+			}
+		}
+		catch (final IOException | NumberFormatException exc) {
+			log.error("Cannot read command usage from " + file, exc);
+		}
+		return result;
+	}
+
+	/** Ensures that a write of the record is scheduled. */
+	private void scheduleWrite() {
+		if (!writePending.compareAndSet(false, true)) return;
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				writePending.set(false);
+				write();
+			}
+		});
+	}
+
+	/**
+	 * Writes the record to a temporary file, then replaces the file. Only one
+	 * write runs at a time, and each writes the record as it is when it begins.
+	 */
+	private void write() {
+		synchronized (writeLock) {
+			writeFile();
+		}
+	}
+
+	private void writeFile() {
+		final StringBuilder sb = new StringBuilder();
+		synchronized (this) {
+			final long now = System.currentTimeMillis();
+			for (final Map.Entry<String, Usage> entry : usages.entrySet()) {
+				final Usage usage = entry.getValue();
+				if (usage.decayedCount(now) < MIN_COUNT) continue;
+				sb.append(entry.getKey()).append('\t').append(usage.count);
+				sb.append('\t').append(usage.lastUsed).append('\n');
+			}
+		}
+		final File parent = file.getAbsoluteFile().getParentFile();
+		final File temp = new File(parent, file.getName() + ".tmp");
+		try {
+			if (!parent.exists() && !parent.mkdirs()) {
+				throw new IOException("Cannot create directory " + parent);
+			}
+			try (final Writer out = new BufferedWriter(writer(temp))) {
+				out.write(sb.toString());
+			}
+			Files.move(temp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (final IOException exc) {
+			log.error("Cannot write command usage to " + file, exc);
+		}
+	}
+
+	private static Reader reader(final File file) throws IOException {
+		return new InputStreamReader(new FileInputStream(file),
+			StandardCharsets.UTF_8);
+	}
+
+	private static Writer writer(final File file) throws IOException {
+		return new OutputStreamWriter(new FileOutputStream(file),
+			StandardCharsets.UTF_8);
+	}
+
+	// -- Helper classes --
+
+	/** The recorded uses of one command. */
+	private static class Usage {
+
+		/** Use count, as of the last use. */
+		private double count;
+
+		/** Time of the last use, per {@link System#currentTimeMillis()}. */
+		private long lastUsed;
+
+		/** Gets the use count, decayed to the given time. */
+		public double decayedCount(final long now) {
+			return count * Math.pow(0.5, (now - lastUsed) / HALF_LIFE);
+		}
+	}
+
+}
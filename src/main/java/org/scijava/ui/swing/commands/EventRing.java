@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import java.util.Arrays;
+
+/**
+ * A bounded ring buffer of compact event records, as shown by the
+ * {@link WatchEventsFrame}. Once the ring is full, each new record replaces
+ * the oldest one.
+ * <p>
+ * Each record holds the ID of its event type, the ID of the thread which
+ * published it, its timestamp and its unformatted details. Records are
+ * addressed by sequence number, which counts up from zero over the life of
+ * the ring, so that a record's number never changes while it is stored.
+ * </p>
+ * <p>
+ * The ring is not thread-safe; the {@link WatchEventsFrame} only uses it on
+ * the EDT.
+ * </p>
+ */
+class EventRing {
+
+	private final int mask;
+	private final int[] types;
+	private final int[] threads;
+	private final long[] times;
+	private final String[] details;
+
+	/** Sequence number of the oldest stored record. */
+	private long first;
+
+	/** Sequence number of the next record to be added. */
+	private long end;
+
+	/**
+	 * Creates a ring with room for the given number of records, rounded up to a
+	 * power of two.
+	 */
+	public EventRing(final int capacity) {
+		final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = size - 1;
+		types = new int[size];
+		threads = new int[size];
+		times = new long[size];
+		details = new String[size];
+	}
+
+	// -- EventRing methods --
+
+	/** Gets the number of records which fit into the ring. */
+	public int capacity() {
+		return types.length;
+	}
+
+	/** Gets the number of stored records. */
+	public int size() {
+		return (int) (end - first);
+	}
+
+	/** Gets the sequence number of the oldest stored record. */
+	public long getFirst() {
+		return first;
+	}
+
+	/** Gets the sequence number which the next record will have. */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * Adds a record, evicting the oldest record if the ring is full.
+	 *
+	 * @return The sequence number of the new record.
+	 */
+	public long add(final int type, final int thread, final long time,
+		final String text)
+	{
+		if (end - first == types.length) first++;
+		final int index = (int) end & mask;
+		types[index] = type;
+		threads[index] = thread;
+		times[index] = time;
+		details[index] = text;
+		return end++;
+	}
+
+	/** Gets the event type ID of the given record. */
+	public int getType(final long seq) {
+		return types[(int) seq & mask];
+	}
+
+	/** Gets the thread ID of the given record. */
+	public int getThread(final long seq) {
+		return threads[(int) seq & mask];
+	}
+
+	/** Gets the timestamp of the given record, in ms since the epoch. */
+	public long getTime(final long seq) {
+		return times[(int) seq & mask];
+	}
+
+	/** Gets the unformatted details of the given record. */
+	public String getDetails(final long seq) {
+		return details[(int) seq & mask];
+	}
+
+	/** Discards all records. */
+	public void clear() {
+		Arrays.fill(details, null);
+		first = end;
+	}
+
+}
@@ -0,0 +1,270 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.scijava.event.EventDetails;
+import org.scijava.event.SciJavaEvent;
+
+/**
+ * Table model showing the records of an {@link EventRing}, for the
+ * {@link WatchEventsFrame}.
+ * <p>
+ * The model keeps the sequence numbers of the records which pass its filter,
+ * so the table only ever asks for the rows it paints, and each cell is
+ * formatted only when it is painted. Changing which event types are
+ * highlighted does not change the rows at all, and changing which are hidden
+ * only rescans the compact records. All methods must be called on the EDT.
+ * </p>
+ */
+@SuppressWarnings("serial")
+class EventTableModel extends AbstractTableModel {
+
+	public static final int TIME_COLUMN = 0;
+	public static final int THREAD_COLUMN = 1;
+	public static final int TYPE_COLUMN = 2;
+	public static final int DETAILS_COLUMN = 3;
+
+	private static final String[] COLUMN_NAMES = //
+		{ "Time", "Thread", "Event", "Details" };
+
+	private final EventRing ring;
+
+	/** Event types, indexed by ID. */
+	private final List<Class<? extends SciJavaEvent>> types = new ArrayList<>();
+	private final Map<Class<? extends SciJavaEvent>, Integer> typeIds =
+		new HashMap<>();
+
+	/** Thread names, indexed by ID. */
+	private final List<String> threadNames = new ArrayList<>();
+	private final Map<String, Integer> threadIds = new HashMap<>();
+
+	/** Whether each event type is hidden, indexed by ID. */
+	private boolean[] hidden = new boolean[16];
+
+	/** Whether each event type is highlighted, indexed by ID. */
+	private boolean[] highlighted = new boolean[16];
+
+	/** Sequence numbers of the shown records, from rowStart to rowEnd. */
+	private long[] rows = new long[1024];
+	private int rowStart, rowEnd;
+
+	/** Number of rows which the table has been told about. */
+	private int publishedRows;
+
+	private final SimpleDateFormat timeFormat =
+		new SimpleDateFormat("hh:mm:ss.SS");
+	private final Date date = new Date();
+
+	public EventTableModel(final EventRing ring) {
+		this.ring = ring;
+	}
+
+	// -- EventTableModel methods --
+
+	/** Gets the number of recorded events, whether shown or not. */
+	public int getEventCount() {
+		return ring.size();
+	}
+
+	/** Gets the number of distinct event types recorded so far. */
+	public int getTypeCount() {
+		return types.size();
+	}
+
+	/** Gets the event type with the given ID. */
+	public Class<? extends SciJavaEvent> getType(final int id) {
+		return types.get(id);
+	}
+
+	/**
+	 * Records the given event. The table is not notified until the next
+	 * {@link #flush}.
+	 */
+	public void add(final EventDetails details, final String threadName) {
+		final int type = typeId(details.getEventType());
+		final long seq = ring.add(type, threadId(threadName), //
+			details.getTimestamp().getTime(), details.getEventString());
+		if (!hidden[type]) addRow(seq);
+	}
+
+	/**
+	 * Drops the rows of evicted records, and notifies the table of the rows
+	 * added and dropped since the last flush.
+	 */
+	public void flush() {
+		int evicted = 0;
+		while (rowStart < rowEnd && rows[rowStart] < ring.getFirst()) {
+			rowStart++;
+			evicted++;
+		}
+		final int known = publishedRows;
+		final int count = getRowCount();
+		publishedRows = count;
+		if (evicted > known) {
+			// NB: Some of the records added since the last flush are gone already.
+			fireTableDataChanged();
+			return;
+		}
+		if (evicted > 0) fireTableRowsDeleted(0, evicted - 1);
+		final int kept = known - evicted;
+		if (count > kept) fireTableRowsInserted(kept, count - 1);
+	}
+
+	/** Shows only the records whose event types are not in the given set. */
+	public void setHidden(final Set<Class<? extends SciJavaEvent>> hiddenTypes) {
+		for (int id = 0; id < types.size(); id++) {
+			hidden[id] = hiddenTypes.contains(types.get(id));
+		}
+		rowStart = rowEnd = 0;
+		for (long seq = ring.getFirst(); seq < ring.getEnd(); seq++) {
+			if (!hidden[ring.getType(seq)]) addRow(seq);
+		}
+		publishedRows = getRowCount();
+		fireTableDataChanged();
+	}
+
+	/** Highlights the records whose event types are in the given set. */
+	public void setHighlighted(
+		final Set<Class<? extends SciJavaEvent>> highlightedTypes)
+	{
+		for (int id = 0; id < types.size(); id++) {
+			highlighted[id] = highlightedTypes.contains(types.get(id));
+		}
+	}
+
+	/** Gets whether the record in the given row is highlighted. */
+	public boolean isHighlighted(final int row) {
+		return highlighted[ring.getType(seq(row))];
+	}
+
+	/** Discards all records. */
+	public void clear() {
+		ring.clear();
+		rowStart = rowEnd = 0;
+		publishedRows = 0;
+		fireTableDataChanged();
+	}
+
+	// -- TableModel methods --
+
+	@Override
+	public int getColumnCount() {
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName(final int column) {
+		return COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(final int column) {
+		return String.class;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowEnd - rowStart;
+	}
+
+	@Override
+	public Object getValueAt(final int row, final int column) {
+		final long seq = seq(row);
+		switch (column) {
+			case TIME_COLUMN:
+				date.setTime(ring.getTime(seq));
+				return timeFormat.format(date);
+			case THREAD_COLUMN:
+				return threadNames.get(ring.getThread(seq));
+			case TYPE_COLUMN:
+				return types.get(ring.getType(seq)).getSimpleName();
+			case DETAILS_COLUMN:
+				final String text = ring.getDetails(seq);
+				return text == null ? null : //
+					text.replace('\n', ' ').replace("\t", "    ").trim();
+			default:
+				return null;
+		}
+	}
+
+	// -- Helper methods --
+
+	private long seq(final int row) {
+		return rows[rowStart + row];
+	}
+
+	private void addRow(final long seq) {
+		if (rowEnd == rows.length) {
+			if (rowStart >= rows.length / 2) {
+				// reclaim the space of dropped rows
+				System.arraycopy(rows, rowStart, rows, 0, rowEnd - rowStart);
+				rowEnd -= rowStart;
+				rowStart = 0;
+			}
+			else rows = Arrays.copyOf(rows, 2 * rows.length);
+		}
+		rows[rowEnd++] = seq;
+	}
+
+	private int typeId(final Class<? extends SciJavaEvent> type) {
+		final Integer id = typeIds.get(type);
+		if (id != null) return id;
+		final int newId = types.size();
+		types.add(type);
+		typeIds.put(type, newId);
+		if (newId == hidden.length) {
+			hidden = Arrays.copyOf(hidden, 2 * newId);
+			highlighted = Arrays.copyOf(highlighted, 2 * newId);
+		}
+		return newId;
+	}
+
+	private int threadId(final String name) {
+		final Integer id = threadIds.get(name);
+		if (id != null) return id;
+		final int newId = threadNames.size();
+		threadNames.add(name);
+		threadIds.put(name, newId);
+		return newId;
+	}
+
+}
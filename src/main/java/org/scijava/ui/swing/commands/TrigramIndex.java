@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import java.util.Arrays;
+
+/**
+ * An inverted index of the trigrams (substrings of three characters) of a list
+ * of keys, which finds the keys that may contain a given substring without
+ * scanning them all: only keys which contain every trigram of the substring
+ * can contain the substring itself.
+ * <p>
+ * The key numbers containing each trigram, its posting list, are stored in
+ * ascending order in one shared array of ints, and located through an
+ * open-addressed hash table of trigrams. A search intersects the posting lists
+ * of the substring's trigrams, starting from the shortest.
+ * </p>
+ */
+class TrigramIndex {
+
+	private static final long EMPTY = -1;
+
+	/** Hash table of trigrams, packed by {@link #trigram}. */
+	private long[] trigrams;
+
+	/** Number of keys containing each trigram in the table. */
+	private int[] counts;
+
+	/** Offset of the posting list of each trigram in the table. */
+	private final int[] starts;
+
+	/** The posting lists of all trigrams. */
+	private final int[] postings;
+
+	private int size;
+
+	/**
+	 * Indexes the given keys.
+	 *
+	 * @param keys The characters of each key; the index does not keep them.
+	 */
+	public TrigramIndex(final char[][] keys) {
+		trigrams = new long[1024];
+		Arrays.fill(trigrams, EMPTY);
+		counts = new int[trigrams.length];
+
+		// count the keys containing each trigram
+		int[] last = new int[trigrams.length];
+		Arrays.fill(last, -1);
+		for (int k = 0; k < keys.length; k++) {
+			final char[] key = keys[k];
+			for (int i = 0; i + 3 <= key.length; i++) {
+				if (2 * (size + 1) > trigrams.length) last = grow(last);
+				final int slot = add(trigram(key, i));
+				if (last[slot] == k) continue; // key already counted
+				last[slot] = k;
+				counts[slot]++;
+			}
+		}
+
+		// lay out the posting lists, then fill them in
+		starts = new int[trigrams.length];
+		int total = 0;
+		for (int slot = 0; slot < trigrams.length; slot++) {
+			starts[slot] = total;
+			total += counts[slot];
+		}
+		postings = new int[total];
+		final int[] filled = new int[trigrams.length];
+		Arrays.fill(last, -1);
+		for (int k = 0; k < keys.length; k++) {
+			final char[] key = keys[k];
+			for (int i = 0; i + 3 <= key.length; i++) {
+				final int slot = slot(trigram(key, i));
+				if (last[slot] == k) continue;
+				last[slot] = k;
+				postings[starts[slot] + filled[slot]++] = k;
+			}
+		}
+	}
+
+	// -- TrigramIndex methods --
+
+	/**
+	 * Finds the keys which contain every trigram of the given substring. These
+	 * include all keys which contain the substring; since trigrams may occur in
+	 * a different arrangement, candidates must still be checked.
+	 *
+	 * @param text The substring, lowercased as the keys were.
+	 * @return The candidate key numbers, in ascending order, or null if the
+	 *         substring is too short to have any trigrams.
+	 */
+	public int[] find(final String text) {
+		if (text.length() < 3) return null;
+		final char[] chars = text.toCharArray();
+
+		// look up the posting list of each trigram, shortest first
+		final int[] slots = new int[chars.length - 2];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = slot(trigram(chars, i));
+			if (slots[i] < 0) return new int[0];
+		}
+		for (int i = 1; i < slots.length; i++) {
+			final int slot = slots[i];
+			int j = i;
+			for (; j > 0 && counts[slots[j - 1]] > counts[slot]; j--) {
+				slots[j] = slots[j - 1];
+			}
+			slots[j] = slot;
+		}
+
+		// intersect the lists
+		final int first = slots[0];
+		int[] result = Arrays.copyOfRange(postings, starts[first], starts[first] +
+			counts[first]);
+		int count = result.length;
+		for (int i = 1; i < slots.length && count > 0; i++) {
+			if (slots[i] == slots[i - 1]) continue; // repeated trigram
+			count = intersect(result, count, starts[slots[i]], counts[slots[i]]);
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Removes the elements of the given sorted list which do not occur in the
+	 * given posting list.
+	 *
+	 * @return The number of elements kept.
+	 */
+	private int intersect(final int[] list, final int count, final int start,
+		final int length)
+	{
+		final int end = start + length;
+		int kept = 0, p = start;
+		for (int i = 0; i < count && p < end; i++) {
+			final int value = list[i];
+			if (length > 8 * count) {
+				// NB: The posting list is much longer; binary search it.
+				final int found = Arrays.binarySearch(postings, p, end, value);
+				p = found < 0 ? -found - 1 : found;
+			}
+			else {
+				while (p < end && postings[p] < value) p++;
+			}
+			if (p < end && postings[p] == value) list[kept++] = value;
+		}
+		return kept;
+	}
+
+	/** Packs the three characters at the given position into a long. */
+	private static long trigram(final char[] chars, final int i) {
+		return (long) chars[i] << 32 | (long) chars[i + 1] << 16 | chars[i + 2];
+	}
+
+	private int hash(final long trigram) {
+		return (int) (trigram ^ trigram >>> 29) * 0x9E3779B9 & trigrams.length - 1;
+	}
+
+	/** Gets the table slot of the given trigram, or -1 if it is absent. */
+	private int slot(final long trigram) {
+		final int mask = trigrams.length - 1;
+		for (int slot = hash(trigram);; slot = slot + 1 & mask) {
+			if (trigrams[slot] == trigram) return slot;
+			if (trigrams[slot] == EMPTY) return -1;
+		}
+	}
+
+	/** Gets the table slot of the given trigram, adding it if needed. */
+	private int add(final long trigram) {
+		final int mask = trigrams.length - 1;
+		int slot = hash(trigram);
+		while (trigrams[slot] != trigram) {
+			if (trigrams[slot] == EMPTY) {
+				trigrams[slot] = trigram;
+				size++;
+				break;
+			}
+			slot = slot + 1 & mask;
+		}
+		return slot;
+	}
+
+	/** Doubles the size of the table, along with the given per-slot array. */
+	private int[] grow(final int[] last) {
+		final long[] oldTrigrams = trigrams;
+		final int[] oldCounts = counts;
+		trigrams = new long[2 * oldTrigrams.length];
+		Arrays.fill(trigrams, EMPTY);
+		counts = new int[trigrams.length];
+		final int[] newLast = new int[trigrams.length];
+		Arrays.fill(newLast, -1);
+		size = 0;
+		for (int old = 0; old < oldTrigrams.length; old++) {
+			if (oldTrigrams[old] == EMPTY) continue;
+			final int slot = add(oldTrigrams[old]);
+			counts[slot] = oldCounts[old];
+			newLast[slot] = last[old];
+		}
+		return newLast;
+	}
+
+}
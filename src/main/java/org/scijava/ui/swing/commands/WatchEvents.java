@@ -40,6 +40,7 @@ import org.scijava.event.EventHistoryListener;
 import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.thread.ThreadService;
 
 /**
  * Listens for events, displaying results in a text window.
@@ -54,6 +55,9 @@ public class WatchEvents implements Command, EventHistoryListener {
 	@Parameter
 	private EventHistory eventHistory;
 
+	@Parameter
+	private ThreadService threadService;
+
 	@Parameter
 	private LogService log;
 
@@ -65,7 +69,7 @@ public class WatchEvents implements Command, EventHistoryListener {
 
 	@Override
 	public void run() {
-		watchEventsFrame = new WatchEventsFrame(eventHistory, log);
+		watchEventsFrame = new WatchEventsFrame(eventHistory, threadService, log);
 
 		// update UI when event history changes
 		eventHistory.addListener(this);
@@ -31,29 +31,36 @@
 package org.scijava.ui.swing.commands;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.IOException;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
-import javax.swing.JTextPane;
+import javax.swing.JTable;
 import javax.swing.JTree;
+import javax.swing.JViewport;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.html.HTMLDocument;
-import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableColumnModel;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
@@ -65,11 +72,28 @@ import org.scijava.log.LogService;
 import org.scijava.swing.checkboxtree.CheckBoxNodeData;
 import org.scijava.swing.checkboxtree.CheckBoxNodeEditor;
 import org.scijava.swing.checkboxtree.CheckBoxNodeRenderer;
+import org.scijava.thread.ThreadService;
+import org.scijava.ui.swing.StaticSwingUtils;
 import org.scijava.util.ClassUtils;
 import org.scijava.util.IteratorPlus;
 
 /**
  * Swing-specific window for event watcher plugin.
+ * <p>
+ * The window records the events which occur while it is open in a bounded
+ * {@link EventRing} of compact records, holding the most recent
+ * {@link #CAPACITY_PROPERTY} events (by default, about a million), and shows
+ * them in a table which only formats the rows in view. Unchecking event types
+ * in the tree hides their rows, and selecting event types highlights their
+ * rows, without formatting anything else.
+ * </p>
+ * <p>
+ * Events may be {@link #append(EventDetails) appended} from any thread. They
+ * are queued, and added to the table on the EDT in batches, at most one batch
+ * per {@link #FRAME_DELAY}. Each batch holds a bounded number of events; any
+ * others wait for the next batch. The status line shows how many events the
+ * latest batch coalesced.
+ * </p>
  * 
  * @author Curtis Rueden
  */
@@ -77,7 +101,20 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 	TreeModelListener, TreeSelectionListener
 {
 
+	/** System property specifying the maximum number of events to record. */
+	public static final String CAPACITY_PROPERTY = "scijava.watchEvents.capacity";
+
+	/** Minimum time between insertions of batches into the table, in ms. */
+	private static final int FRAME_DELAY = 16;
+
+	/** Maximum number of events added to the table by a single batch. */
+	private static final int MAX_BATCH_EVENTS = 10000;
+
+	private static final Color TIME_COLOR = Color.gray;
+	private static final Color TYPE_COLOR = new Color(0, 128, 0);
+
 	private final EventHistory eventHistory;
+	private final ThreadService threadService;
 	private final LogService log;
 
 	/** Data structure storing event types that should be filtered out. */
@@ -92,16 +129,37 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 	private final DefaultMutableTreeNode root;
 	private final JTree tree;
 
-	private final JTextPane textPane;
-	private final HTMLEditorKit kit;
-	private final HTMLDocument doc;
+	private final EventTableModel tableModel;
+	private final JTable table;
+	private final JScrollPane tableScrollPane;
+	private final JLabel statusLabel;
+
+	/** Events which have not yet been added to the table. */
+	private final ConcurrentLinkedQueue<PendingEvent> pending =
+		new ConcurrentLinkedQueue<>();
+
+	/** Whether a batch is queued, or awaiting its frame. */
+	private final AtomicBoolean batchScheduled = new AtomicBoolean();
 
-	// -- Constructor --
+	/** Number of events added to the table by the latest batch. */
+	private int lastBatchSize;
+
+	/** Timer which paces the insertion of batches. */
+	private final Timer frameTimer;
+
+	// -- Constructors --
 
 	public WatchEventsFrame(final EventHistory eventHistory, final LogService log)
+	{
+		this(eventHistory, log.context().service(ThreadService.class), log);
+	}
+
+	public WatchEventsFrame(final EventHistory eventHistory,
+		final ThreadService threadService, final LogService log)
 	{
 		super("Event Watcher");
 		this.eventHistory = eventHistory;
+		this.threadService = threadService;
 		this.log = log;
 
 		// create tree
@@ -115,18 +173,24 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 		tree.addTreeSelectionListener(this);
 		treeModel.addTreeModelListener(this);
 
-		// create text pane
-		textPane = new JTextPane();
-		kit = new HTMLEditorKit();
-		doc = new HTMLDocument();
-		textPane.setEditorKit(kit);
-		textPane.setDocument(doc);
-		textPane.setEditable(false);
+		// create event table
+		final int capacity = Integer.getInteger(CAPACITY_PROPERTY, 1 << 20);
+		tableModel = new EventTableModel(new EventRing(capacity));
+		table = new JTable(tableModel);
+		table.setFillsViewportHeight(true);
+		table.setShowGrid(false);
+		table.setDefaultRenderer(String.class, new EventCellRenderer());
+		final TableColumnModel columns = table.getColumnModel();
+		columns.getColumn(EventTableModel.TIME_COLUMN).setPreferredWidth(90);
+		columns.getColumn(EventTableModel.THREAD_COLUMN).setPreferredWidth(150);
+		columns.getColumn(EventTableModel.TYPE_COLUMN).setPreferredWidth(180);
+		columns.getColumn(EventTableModel.DETAILS_COLUMN).setPreferredWidth(500);
+		tableScrollPane = new JScrollPane(table);
 
 		final JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
 		splitPane.setResizeWeight(0.35);
 		splitPane.add(new JScrollPane(tree));
-		splitPane.add(new JScrollPane(textPane));
+		splitPane.add(tableScrollPane);
 
 		// create clear history button
 		final JButton clearHistory = new JButton("Clear History");
@@ -135,6 +199,8 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 
 		final JPanel buttonBar = new JPanel();
 		buttonBar.setLayout(new BoxLayout(buttonBar, BoxLayout.X_AXIS));
+		statusLabel = new JLabel();
+		buttonBar.add(statusLabel);
 		buttonBar.add(Box.createHorizontalGlue());
 		buttonBar.add(clearHistory);
 
@@ -146,17 +212,30 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 
 		setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
 
+		frameTimer = new Timer(FRAME_DELAY, new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				// NB: Reset the flag first, so that events arriving
+				// from now on will schedule another batch.
+				batchScheduled.set(false);
+				if (!pending.isEmpty()) scheduleBatch();
+			}
+		});
+		frameTimer.setRepeats(false);
+
 		setSize(1000, 700);
 	}
 
 	// -- WatchEventsFrame methods --
 
-	/** Appends the given event details to the text pane. Efficient. */
+	/**
+	 * Queues the given event details to be appended to the table. Efficient, and
+	 * safe to call from any thread.
+	 */
 	public void append(final EventDetails details) {
-		final Class<? extends SciJavaEvent> eventType = details.getEventType();
-		final DefaultMutableTreeNode node = findOrCreate(eventType);
-		if (!isChecked(node)) return; // skip disabled event types
-		append(details.toHTML(selected.contains(eventType)));
+		pending.add(new PendingEvent(details, Thread.currentThread().getName()));
+		scheduleBatch();
 	}
 
 	/** Refreshes the tree to match the state of its model. */
@@ -168,35 +247,47 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 		}
 	}
 
-	/** Resets the text to match the current event history. Expensive. */
+	/**
+	 * Updates the table to show and highlight the event types chosen in the
+	 * tree. Efficient: this only rescans the compact event records.
+	 */
 	public void refreshLog() {
-		final String html = eventHistory.toHTML(filtered, selected);
-		setText(html);
+		tableModel.setHidden(filtered);
+		tableModel.setHighlighted(selected);
+		updateStatus();
 	}
 
-	/** Appends the given HTML text string to the text pane. Efficient. */
-	public void append(final String text) {
-		try {
-			kit.insertHTML(doc, doc.getLength(), text, 0, 0, null);
-		}
-		catch (final BadLocationException e) {
-			log.error(e);
-		}
-		catch (final IOException e) {
-			log.error(e);
-		}
-		scrollToBottom();
+	/**
+	 * Formerly appended the given HTML to the log.
+	 *
+	 * @deprecated Events are now shown in a table, which cannot show arbitrary
+	 *             HTML; this method only logs a warning. Use
+	 *             {@link #append(EventDetails)} instead.
+	 */
+	@Deprecated
+	public void append(@SuppressWarnings("unused") final String text) {
+		log.warn("WatchEventsFrame.append(String) is no longer supported; " +
+			"use append(EventDetails) instead");
 	}
 
-	/** Resets the text pane to the given HTML text. Expensive. */
-	public void setText(final String text) {
-		textPane.setText(text);
-		scrollToBottom();
+	/**
+	 * Formerly replaced the log with the given HTML.
+	 *
+	 * @deprecated Events are now shown in a table, which cannot show arbitrary
+	 *             HTML; this method only clears the table. Use {@link #clear()}
+	 *             instead.
+	 */
+	@Deprecated
+	public void setText(@SuppressWarnings("unused") final String text) {
+		clear();
 	}
 
-	/** Clears the text pane. */
+	/** Clears the recorded events. */
 	public void clear() {
-		textPane.setText("");
+		pending.clear();
+		tableModel.clear();
+		lastBatchSize = 0;
+		updateStatus();
 	}
 
 	// -- ActionListener methods --
@@ -230,7 +321,7 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 		// refresh the tree to match the new state of the model
 		if (anyChanged) refreshTree();
 
-		// re-filter the log pane
+		// re-filter the table
 		syncFiltered();
 		refreshLog();
 	}
@@ -254,8 +345,10 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 
 	@Override
 	public void valueChanged(final TreeSelectionEvent e) {
+		// NB: Highlighting changes no rows, so there is no need to refilter.
 		syncSelected();
-		refreshLog();
+		tableModel.setHighlighted(selected);
+		table.repaint();
 	}
 
 	// -- Helper methods --
@@ -287,6 +380,54 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 		}
 	}
 
+	/** Ensures that a batch of the pending events will be added. */
+	private void scheduleBatch() {
+		if (!batchScheduled.compareAndSet(false, true)) return; // already queued
+		threadService.queue(new Runnable() {
+
+			@Override
+			public void run() {
+				addBatch();
+			}
+		});
+	}
+
+	/** Adds a batch of the pending events to the table. Called on the EDT. */
+	private void addBatch() {
+		final boolean atBottom =
+			StaticSwingUtils.isScrolledToBottom(tableScrollPane);
+		final int typeCount = tableModel.getTypeCount();
+		int count = 0;
+		while (count < MAX_BATCH_EVENTS) {
+			final PendingEvent event = pending.poll();
+			if (event == null) break;
+			tableModel.add(event.details, event.threadName);
+			count++;
+		}
+		// add any new event types to the tree
+		for (int id = typeCount; id < tableModel.getTypeCount(); id++) {
+			findOrCreate(tableModel.getType(id));
+		}
+		tableModel.flush();
+		if (count > 0) lastBatchSize = count;
+		updateStatus();
+		if (atBottom) scrollToBottom();
+		// NB: Wait before the next batch, so that bursts are coalesced.
+		frameTimer.restart();
+	}
+
+	/** Shows the number of events recorded and shown. */
+	private void updateStatus() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(tableModel.getEventCount()).append(" events recorded, ");
+		sb.append(tableModel.getRowCount()).append(" shown");
+		if (lastBatchSize > 1) {
+			sb.append("; last update: ").append(lastBatchSize);
+			sb.append(" events coalesced");
+		}
+		statusLabel.setText(sb.toString());
+	}
+
 	/** Gets a tree node for the given type of event, creating it if necessary. */
 	private DefaultMutableTreeNode findOrCreate(
 		final Class<? extends SciJavaEvent> eventType)
@@ -328,9 +469,15 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 		return node;
 	}
 
-	/** Makes sure the last line of text is always visible. */
+	/** Makes sure the last row of the table is visible. */
 	private void scrollToBottom() {
-		textPane.setCaretPosition(textPane.getDocument().getLength());
+		// NB: Lay out synchronously, so that the table's new size is known. This
+		// is cheap, since the table's height is computed in constant time.
+		tableScrollPane.validate();
+		final JViewport viewport = tableScrollPane.getViewport();
+		final int y = Math.max(0, table.getHeight() - //
+			viewport.getExtentSize().height);
+		viewport.setViewPosition(new Point(0, y));
 	}
 
 	/** Recursively marks the given node, and all its children, as selected. */
@@ -402,4 +549,42 @@ public class WatchEventsFrame extends JFrame implements ActionListener,
 		return new IteratorPlus<>(en);
 	}
 
+	// -- Helper classes --
+
+	/** An event awaiting its batch, with the name of its thread. */
+	private static class PendingEvent {
+
+		private final EventDetails details;
+		private final String threadName;
+
+		public PendingEvent(final EventDetails details, final String threadName) {
+			this.details = details;
+			this.threadName = threadName;
+		}
+	}
+
+	/** Renders table cells in the colors of the event history's HTML. */
+	@SuppressWarnings("serial")
+	private class EventCellRenderer extends DefaultTableCellRenderer {
+
+		@Override
+		public Component getTableCellRendererComponent(final JTable t,
+			final Object value, final boolean isSelected, final boolean hasFocus,
+			final int row, final int column)
+		{
+			super.getTableCellRendererComponent(t, value, isSelected, hasFocus, row,
+				column);
+			if (!isSelected) {
+				final int modelColumn = t.convertColumnIndexToModel(column);
+				setForeground(modelColumn == EventTableModel.TIME_COLUMN ? TIME_COLOR
+					: modelColumn == EventTableModel.TYPE_COLUMN ? TYPE_COLOR : t
+						.getForeground());
+			}
+			if (tableModel.isHighlighted(row)) {
+				setFont(getFont().deriveFont(Font.BOLD));
+			}
+			return this;
+		}
+	}
+
 }
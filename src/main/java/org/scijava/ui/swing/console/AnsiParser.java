@@ -0,0 +1,240 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+/**
+ * A streaming parser for ANSI escape sequences in console output. Text is
+ * passed on in segments, each with the ID of the {@link ConsoleStyles style}
+ * given by the Select Graphic Rendition (SGR) sequences seen so far; all escape
+ * sequences are removed. Since the parser is a state machine over single
+ * characters, a sequence may be split across any number of calls.
+ * <p>
+ * SGR codes for bold, italic, underline and inverse text are supported, as are
+ * the 16 basic colors, the 256-color palette and 24-bit colors, for both
+ * foreground and background. Other escape sequences, including operating
+ * system commands such as window titles, are discarded. The
+ * parser does not allocate per character or per sequence.
+ * </p>
+ * <p>
+ * Each output stream needs its own parser. Instances are not thread-safe.
+ * </p>
+ */
+class AnsiParser {
+
+	/** Receives the parsed text. */
+	interface Sink {
+
+		/** Receives a range of text, in the given style. */
+		void text(CharSequence text, int start, int end, int style);
+	}
+
+	private static final char ESC = 0x1b;
+
+	private static final int NORMAL = 0;
+	private static final int ESCAPE = 1;
+	private static final int CSI = 2;
+	private static final int OSC = 3;
+
+	private static final char BEL = 0x07;
+
+	private static final int MAX_PARAMS = 16;
+
+	/** The 16 basic colors, as 0xRRGGBB. */
+	private static final int[] COLORS = { //
+		0x000000, 0xcd0000, 0x00cd00, 0xcdcd00, //
+		0x0000ee, 0xcd00cd, 0x00cdcd, 0xe5e5e5, //
+		0x7f7f7f, 0xff0000, 0x00ff00, 0xffff00, //
+		0x5c5cff, 0xff00ff, 0x00ffff, 0xffffff };
+
+	/** Intensities of the levels of the 6x6x6 color cube. */
+	private static final int[] CUBE = { 0, 95, 135, 175, 215, 255 };
+
+	private final ConsoleStyles styles;
+
+	private int state = NORMAL;
+	private final int[] params = new int[MAX_PARAMS];
+	private int paramIndex;
+
+	/** Current attributes. */
+	private int flags;
+	private int foreground = -1;
+	private int background = -1;
+
+	/** The style ID for the current attributes and {@link #styleBase}. */
+	private int style;
+	private int styleBase = -1;
+
+	public AnsiParser(final ConsoleStyles styles) {
+		this.styles = styles;
+	}
+
+	// -- AnsiParser methods --
+
+	/**
+	 * Parses the given text, passing its plain text on to the given sink.
+	 *
+	 * @param text The text to parse.
+	 * @param base The ID of the base style, which the SGR attributes modify.
+	 * @param sink The sink receiving the plain text.
+	 */
+	public void parse(final CharSequence text, final int base, final Sink sink) {
+		final int length = text.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			switch (state) {
+				case NORMAL:
+					if (c != ESC) continue;
+					if (i > start) sink.text(text, start, i, style(base));
+					state = ESCAPE;
+					break;
+				case ESCAPE:
+					if (c == '[') {
+						state = CSI;
+						paramIndex = 0;
+						params[0] = 0;
+					}
+					else if (c == ']') state = OSC;
+					// NB: Discard other escape sequences; stay put on a repeated ESC.
+					else if (c != ESC) state = NORMAL;
+					break;
+				case CSI:
+					if (c >= '0' && c <= '9') {
+						final int value = params[paramIndex];
+						if (value < 100000) params[paramIndex] = 10 * value + c - '0';
+					}
+					else if (c == ';' || c == ':') {
+						if (paramIndex < MAX_PARAMS - 1) params[++paramIndex] = 0;
+					}
+					else if (c >= 0x40 && c <= 0x7e) {
+						// final byte; only SGR sequences affect the text
+						if (c == 'm') applySGR(paramIndex + 1);
+						state = NORMAL;
+					}
+					else if (c == ESC) state = ESCAPE; // a new sequence begins
+					else if (c < 0x20 || c > 0x7e) {
+						// malformed sequence; show the text after it
+						state = NORMAL;
+						start = i;
+						continue;
+					}
+					break;
+				case OSC:
+					// operating system command (e.g., window title); discard it
+					if (c == BEL) state = NORMAL;
+					else if (c == ESC) state = ESCAPE; // string terminator
+					else if (c == '\n') {
+						// unterminated command; show the text after it
+						state = NORMAL;
+						start = i;
+						continue;
+					}
+					break;
+			}
+			start = i + 1;
+		}
+		if (state == NORMAL && start < length) {
+			sink.text(text, start, length, style(base));
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Gets the style ID for the current attributes. */
+	private int style(final int base) {
+		if (base != styleBase) {
+			style = styles.id(base, ConsoleStyles.attributes(flags, foreground,
+				background));
+			styleBase = base;
+		}
+		return style;
+	}
+
+	/** Applies the given number of SGR parameters to the current attributes. */
+	private void applySGR(final int count) {
+		for (int i = 0; i < count; i++) {
+			final int p = params[i];
+			if (p == 0) {
+				flags = 0;
+				foreground = background = -1;
+			}
+			else if (p == 1) flags |= ConsoleStyles.BOLD;
+			else if (p == 3) flags |= ConsoleStyles.ITALIC;
+			else if (p == 4) flags |= ConsoleStyles.UNDERLINE;
+			else if (p == 7) flags |= ConsoleStyles.INVERSE;
+			else if (p == 22) flags &= ~ConsoleStyles.BOLD;
+			else if (p == 23) flags &= ~ConsoleStyles.ITALIC;
+			else if (p == 24) flags &= ~ConsoleStyles.UNDERLINE;
+			else if (p == 27) flags &= ~ConsoleStyles.INVERSE;
+			else if (p >= 30 && p <= 37) foreground = COLORS[p - 30];
+			else if (p == 39) foreground = -1;
+			else if (p >= 40 && p <= 47) background = COLORS[p - 40];
+			else if (p == 49) background = -1;
+			else if (p >= 90 && p <= 97) foreground = COLORS[p - 90 + 8];
+			else if (p >= 100 && p <= 107) background = COLORS[p - 100 + 8];
+			else if ((p == 38 || p == 48) && i + 1 < count) {
+				// extended color: 5;index or 2;r;g;b
+				int color = -1;
+				if (params[i + 1] == 5 && i + 2 < count) {
+					color = paletteColor(params[i + 2]);
+					i += 2;
+				}
+				else if (params[i + 1] == 2 && i + 4 < count) {
+					color = (clamp(params[i + 2]) << 16) | //
+						(clamp(params[i + 3]) << 8) | clamp(params[i + 4]);
+					i += 4;
+				}
+				else i++;
+				if (color < 0) continue;
+				if (p == 38) foreground = color;
+				else background = color;
+			}
+		}
+		styleBase = -1; // recompute the style on next use
+	}
+
+	/** Gets a color of the 256-color palette, as 0xRRGGBB. */
+	private static int paletteColor(final int index) {
+		if (index < 0 || index > 255) return -1;
+		if (index < 16) return COLORS[index];
+		if (index >= 232) {
+			final int gray = 8 + 10 * (index - 232);
+			return gray << 16 | gray << 8 | gray;
+		}
+		final int cube = index - 16;
+		return CUBE[cube / 36] << 16 | CUBE[cube / 6 % 6] << 8 | CUBE[cube % 6];
+	}
+
+	private static int clamp(final int value) {
+		return Math.min(255, Math.max(0, value));
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.util.regex.Pattern;
+
+import org.scijava.console.OutputEvent;
+import org.scijava.console.OutputEvent.Source;
+
+/**
+ * Criteria selecting which console output a {@link FilteredConsoleView}
+ * shows. Each criterion is optional; output must meet all criteria which are
+ * given.
+ */
+public class ConsoleFilter {
+
+	private final Source source;
+	private final Boolean contextual;
+	private final String threadName;
+	private final Pattern pattern;
+
+	/**
+	 * Creates a filter from the given criteria.
+	 *
+	 * @param source The output source ({@code stdout} or {@code stderr}) to
+	 *          show, or null for both.
+	 * @param contextual True to show only contextual output, false to show only
+	 *          global output, or null for both.
+	 * @param threadName Name of the thread whose output to show, or null for
+	 *          all threads.
+	 * @param pattern Regular expression which lines must contain, or null for
+	 *          all lines.
+	 */
+	public ConsoleFilter(final Source source, final Boolean contextual,
+		final String threadName, final Pattern pattern)
+	{
+		this.source = source;
+		this.contextual = contextual;
+		this.threadName = threadName;
+		this.pattern = pattern;
+	}
+
+	// -- ConsoleFilter methods --
+
+	public Source getSource() {
+		return source;
+	}
+
+	public Boolean getContextual() {
+		return contextual;
+	}
+
+	public String getThreadName() {
+		return threadName;
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Tests whether the given output event meets the source, scope and thread
+	 * criteria. (The pattern is tested against each completed line instead.)
+	 *
+	 * @param event The output event.
+	 * @param thread The thread which produced the event, or null if unknown.
+	 */
+	public boolean accepts(final OutputEvent event, final Thread thread) {
+		if (source != null && event.getSource() != source) return false;
+		if (contextual != null && event.isContextual() != contextual) return false;
+		if (threadName == null) return true;
+		return thread != null && threadName.equals(thread.getName());
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		if (source != null) sb.append(source == Source.STDERR ? "stderr" : "stdout");
+		if (contextual != null) {
+			if (sb.length() > 0) sb.append(", ");
+			sb.append(contextual ? "contextual" : "global");
+		}
+		if (threadName != null) {
+			if (sb.length() > 0) sb.append(", ");
+			sb.append("thread \"").append(threadName).append("\"");
+		}
+		if (pattern != null) {
+			if (sb.length() > 0) sb.append(", ");
+			sb.append("matching /").append(pattern.pattern()).append("/");
+		}
+		return sb.length() == 0 ? "all output" : sb.toString();
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Tests whether text in the given base style meets the source and scope
+	 * criteria. Stored text has no thread, so this fails if a thread is given.
+	 */
+	boolean accepts(final int style) {
+		if (threadName != null) return false;
+		if (source != null && ConsoleStyles.source(style) != source) return false;
+		return contextual == null || ConsoleStyles.isContextual(style) == contextual;
+	}
+
+}
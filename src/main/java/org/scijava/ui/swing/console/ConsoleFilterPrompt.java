@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.awt.Component;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import net.miginfocom.swing.MigLayout;
+
+import org.scijava.console.OutputEvent.Source;
+
+/**
+ * Asks the user for the criteria of a {@link ConsoleFilter}.
+ */
+class ConsoleFilterPrompt {
+
+	private static final String ANY = "Any";
+	private static final String STDOUT = "Standard output";
+	private static final String STDERR = "Standard error";
+	private static final String CONTEXTUAL = "Contextual";
+	private static final String GLOBAL = "Global";
+
+	private ConsoleFilterPrompt() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Shows a dialog asking for filter criteria.
+	 *
+	 * @param parent The dialog's parent component, or null.
+	 * @return The chosen filter, or null if the dialog was canceled.
+	 */
+	public static ConsoleFilter prompt(final Component parent) {
+		final JComboBox<String> source =
+			new JComboBox<>(new String[] { ANY, STDOUT, STDERR });
+		final JComboBox<String> scope =
+			new JComboBox<>(new String[] { ANY, CONTEXTUAL, GLOBAL });
+		final JTextField thread = new JTextField(20);
+		final JTextField pattern = new JTextField(20);
+
+		final JPanel panel = new JPanel(new MigLayout("", "[][grow,fill]"));
+		panel.add(new JLabel("Source:"));
+		panel.add(source, "wrap");
+		panel.add(new JLabel("Scope:"));
+		panel.add(scope, "wrap");
+		panel.add(new JLabel("Thread name:"));
+		panel.add(thread, "wrap");
+		panel.add(new JLabel("Regular expression:"));
+		panel.add(pattern);
+
+		while (true) {
+			final int result = JOptionPane.showConfirmDialog(parent, panel,
+				"Filter Console", JOptionPane.OK_CANCEL_OPTION,
+				JOptionPane.PLAIN_MESSAGE);
+			if (result != JOptionPane.OK_OPTION) return null;
+
+			final Pattern regex;
+			try {
+				regex = empty(pattern) ? null : Pattern.compile(pattern.getText());
+			}
+			catch (final PatternSyntaxException exc) {
+				JOptionPane.showMessageDialog(parent, exc.getMessage(),
+					"Invalid Regular Expression", JOptionPane.ERROR_MESSAGE);
+				continue;
+			}
+			final Object s = source.getSelectedItem();
+			final Object c = scope.getSelectedItem();
+			return new ConsoleFilter( //
+				s == STDOUT ? Source.STDOUT : s == STDERR ? Source.STDERR : null, //
+				c == CONTEXTUAL ? Boolean.TRUE : c == GLOBAL ? Boolean.FALSE : null, //
+				empty(thread) ? null : thread.getText(), regex);
+		}
+	}
+
+	// -- Helper methods --
+
+	private static boolean empty(final JTextField field) {
+		return field.getText().isEmpty();
+	}
+
+}
@@ -0,0 +1,409 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.AbstractAction;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import net.miginfocom.swing.MigLayout;
+
+import org.scijava.thread.ThreadService;
+
+/**
+ * A find bar for the console. Searches run on a background thread over the
+ * console's {@link LineStore}, whose line index is maintained as output is
+ * appended, so the text is never copied out of the store as a whole. Each
+ * search can be canceled at any time by changing the query. Once a search has
+ * caught up with the output, lines completed later are searched as they
+ * arrive.
+ * <p>
+ * Matches are collected in a {@link ConsoleMatches}; only those on the visible
+ * lines are highlighted, and stepping to the next or previous match takes
+ * constant time.
+ * </p>
+ * <p>
+ * All methods must be called on the EDT.
+ * </p>
+ */
+@SuppressWarnings("serial")
+class ConsoleFindBar extends JPanel {
+
+	/** Number of lines searched between checks for cancellation. */
+	private static final int CHUNK_LINES = 1000;
+
+	/** Maximum number of matches collected by a single search. */
+	private static final int MAX_MATCHES = 1 << 20;
+
+	private final LineStore store;
+	private final ConsoleRenderer renderer;
+	private final ThreadService threadService;
+
+	private final JTextField queryField;
+	private final JCheckBox matchCase;
+	private final JCheckBox regex;
+	private final JLabel status;
+
+	private final ConsoleMatches matches = new ConsoleMatches();
+
+	/** Index of the selected match, or -1 if none has been selected. */
+	private long current = -1;
+
+	/** The compiled query, or null if there is none. */
+	private Pattern pattern;
+
+	/** The running search, or null if none is running. */
+	private SearchTask task;
+
+	/** Absolute number of the first line which has not yet been searched. */
+	private long searchedThrough;
+
+	public ConsoleFindBar(final LineStore store, final ConsoleRenderer renderer,
+		final ThreadService threadService)
+	{
+		this.store = store;
+		this.renderer = renderer;
+		this.threadService = threadService;
+
+		queryField = new JTextField(30);
+		matchCase = new JCheckBox("Match case");
+		regex = new JCheckBox("Regex");
+		status = new JLabel();
+		final JButton previous = new JButton("Previous");
+		final JButton next = new JButton("Next");
+		final JButton close = new JButton("Close");
+
+		setLayout(new MigLayout("insets 0", "[][grow,fill][][][][][][]"));
+		add(new JLabel("Find:"));
+		add(queryField);
+		add(matchCase);
+		add(regex);
+		add(previous);
+		add(next);
+		add(status);
+		add(close);
+
+		queryField.getDocument().addDocumentListener(new DocumentListener() {
+
+			@Override
+			public void insertUpdate(final DocumentEvent e) {
+				search();
+			}
+
+			@Override
+			public void removeUpdate(final DocumentEvent e) {
+				search();
+			}
+
+			@Override
+			public void changedUpdate(final DocumentEvent e) {
+				search();
+			}
+		});
+		final ActionListener searchAgain = new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				search();
+			}
+		};
+		matchCase.addActionListener(searchAgain);
+		regex.addActionListener(searchAgain);
+		queryField.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				next();
+			}
+		});
+		next.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				next();
+			}
+		});
+		previous.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				previous();
+			}
+		});
+		close.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				close();
+			}
+		});
+
+		queryField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER,
+			InputEvent.SHIFT_MASK), "find-previous");
+		queryField.getActionMap().put("find-previous", new AbstractAction() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				previous();
+			}
+		});
+		getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(KeyStroke
+			.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "close-find");
+		getActionMap().put("close-find", new AbstractAction() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				close();
+			}
+		});
+	}
+
+	// -- ConsoleFindBar methods --
+
+	/** Shows the find bar, and focuses its query field. */
+	public void open() {
+		if (!isVisible()) {
+			setVisible(true);
+			search();
+		}
+		queryField.requestFocusInWindow();
+		queryField.selectAll();
+	}
+
+	/** Hides the find bar, canceling any search and removing the highlights. */
+	public void close() {
+		cancel();
+		pattern = null;
+		matches.clear();
+		current = -1;
+		renderer.highlight(null);
+		setVisible(false);
+	}
+
+	/** Sets the query, as if typed by the user. */
+	public void setQuery(final String query) {
+		queryField.setText(query);
+	}
+
+	/** Selects the next match, wrapping around at the end. */
+	public void next() {
+		if (matches.size() == 0) return;
+		current = current < matches.first() || current + 1 >= matches.end() ? //
+			matches.first() : current + 1;
+		selectCurrent();
+	}
+
+	/** Selects the previous match, wrapping around at the start. */
+	public void previous() {
+		if (matches.size() == 0) return;
+		current = current <= matches.first() || current >= matches.end() ? //
+			matches.end() - 1 : current - 1;
+		selectCurrent();
+	}
+
+	/** Searches any lines which were completed since they were last searched. */
+	public void outputAppended() {
+		if (pattern == null || task != null) return;
+		if (matches.size() >= MAX_MATCHES) return;
+		final long completed = store.getFirstLineNumber() + //
+			store.getLineCount() - 1;
+		if (completed <= searchedThrough) return;
+		task = new SearchTask(pattern, searchedThrough, matches.size());
+		threadService.run(task);
+	}
+
+	/** Discards the matches on lines which were evicted from the store. */
+	public void linesEvicted() {
+		if (pattern == null) return;
+		matches.evict(store.getFirstLineNumber());
+		renderer.highlight(matches);
+		updateStatus();
+	}
+
+	/** Restarts the search, since the store's text was discarded. */
+	public void cleared() {
+		if (pattern != null) search();
+	}
+
+	// -- Helper methods --
+
+	/** Starts a new search for the current query. */
+	private void search() {
+		cancel();
+		matches.clear();
+		current = -1;
+		pattern = null;
+		searchedThrough = store.getFirstLineNumber();
+		renderer.highlight(null);
+
+		final String query = queryField.getText();
+		if (!isVisible() || query.isEmpty()) {
+			status.setText("");
+			return;
+		}
+		final int flags = matchCase.isSelected() ? 0 : //
+			Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+		try {
+			pattern = Pattern.compile(regex.isSelected() ? query : Pattern.quote(
+				query), flags);
+		}
+		catch (final PatternSyntaxException exc) {
+			status.setText("Invalid expression");
+			return;
+		}
+		updateStatus();
+		outputAppended();
+	}
+
+	private void cancel() {
+		if (task == null) return;
+		task.canceled = true;
+		task = null;
+	}
+
+	private void selectCurrent() {
+		renderer.select(matches.getLine(current), matches.getStart(current),
+			matches.getEnd(current));
+		updateStatus();
+	}
+
+	private void updateStatus() {
+		if (pattern == null) return;
+		final int count = matches.size();
+		final String more = task != null ? "..." : //
+			count >= MAX_MATCHES ? "+" : "";
+		if (count == 0) status.setText(task != null ? "Searching..." : "No matches");
+		else if (current < matches.first()) status.setText(count + more + //
+			" matches");
+		else status.setText((current - matches.first() + 1) + " of " + count +
+			more);
+	}
+
+	/** Adds the matches found by the given search. Called on the EDT. */
+	private void found(final SearchTask search, final ConsoleMatches found,
+		final long through, final boolean done)
+	{
+		if (search != task) return; // canceled
+		matches.addAll(found);
+		matches.evict(store.getFirstLineNumber());
+		searchedThrough = through;
+		if (done) task = null;
+		renderer.highlight(matches);
+		if (current < 0 && matches.size() > 0) next();
+		else updateStatus();
+		// NB: Search any lines which were completed while we were searching.
+		if (done) outputAppended();
+	}
+
+	// -- Helper classes --
+
+	/** Searches the store's completed lines, starting with the given line. */
+	private class SearchTask implements Runnable {
+
+		private final Pattern query;
+		private long line;
+		private int total;
+		private volatile boolean canceled;
+
+		public SearchTask(final Pattern query, final long line, final int total) {
+			this.query = query;
+			this.line = line;
+			this.total = total;
+		}
+
+		@Override
+		public void run() {
+			final Matcher matcher = query.matcher("");
+			char[] buf = new char[256];
+			CharBuffer chars = CharBuffer.wrap(buf);
+			boolean done = false;
+			while (!canceled && !done) {
+				final ConsoleMatches found = new ConsoleMatches();
+				// NB: Lock the store one chunk at a time, so output can keep coming.
+				synchronized (store) {
+					final long firstLine = store.getFirstLineNumber();
+					// NB: The last line is still incomplete; it is searched later.
+					final long endLine = firstLine + store.getLineCount() - 1;
+					if (line < firstLine) line = firstLine;
+					final long stop = Math.min(endLine, line + CHUNK_LINES);
+					for (; line < stop && total < MAX_MATCHES; line++) {
+						final int index = (int) (line - firstLine);
+						final int length = store.getLineLength(index);
+						if (buf.length < length) {
+							buf = new char[2 * length];
+							chars = CharBuffer.wrap(buf);
+						}
+						store.getChars(store.getLineStart(index), length, buf, 0);
+						chars.clear();
+						chars.limit(length);
+						matcher.reset(chars);
+						while (matcher.find() && total < MAX_MATCHES) {
+							if (matcher.end() == matcher.start()) continue; // empty
+							found.add(line, matcher.start(), matcher.end());
+							total++;
+						}
+					}
+					done = line >= endLine || total >= MAX_MATCHES;
+				}
+				publish(found, line, done);
+			}
+		}
+
+		private void publish(final ConsoleMatches found, final long through,
+			final boolean done)
+		{
+			threadService.queue(new Runnable() {
+
+				@Override
+				public void run() {
+					found(SearchTask.this, found, through, done);
+				}
+			});
+		}
+	}
+
+}
@@ -0,0 +1,579 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.KeyStroke;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.UIManager;
+import javax.swing.text.Style;
+import javax.swing.text.StyleConstants;
+
+/**
+ * A {@link ConsoleRenderer} which paints the text of a {@link LineStore}
+ * directly, one line at a time.
+ * <p>
+ * Unlike a {@link javax.swing.JTextPane}, this view keeps no per-character
+ * layout state: since it uses a fixed-width font, the position of every line
+ * and column is known arithmetically. Painting only reads and measures the
+ * lines intersecting the clip region, and the preferred size (and hence
+ * scrolling to the bottom) is computed in constant time.
+ * </p>
+ * <p>
+ * The view supports selecting text with the mouse and copying it to the
+ * system clipboard.
+ * </p>
+ */
+@SuppressWarnings("serial")
+class ConsoleLineView extends JComponent implements ConsoleRenderer,
+	Scrollable
+{
+
+	private static final int BOLD = 1;
+	private static final int ITALIC = 2;
+
+	private final LineStore store;
+	private final ConsoleStyles styles;
+
+	/** Plain, bold, italic and bold italic fonts, indexed by style flags. */
+	private final Font[] fonts = new Font[4];
+	private final int lineHeight;
+	private final int charWidth;
+	private final int ascent;
+
+	/** Rendering attributes of each style, indexed by style ID. */
+	private Color[] foregrounds = new Color[0];
+	private Color[] backgrounds = new Color[0];
+	private int[] fontFlags = new int[0];
+	private boolean[] underlines = new boolean[0];
+
+	/** Buffer for the characters of the line being painted. */
+	private char[] lineChars = new char[256];
+
+	/** Buffer for the tab-expanded characters of the line being painted. */
+	private char[] paintChars = new char[256];
+
+	private final Color selectionColor;
+
+	/** Color in which search matches are highlighted. */
+	private final Color matchColor = new Color(255, 200, 0, 128);
+
+	/** Search matches to highlight, or null for none. */
+	private ConsoleMatches matches;
+
+	/** Absolute line number and column where the selection started. */
+	private long anchorLine = -1;
+	private int anchorColumn;
+
+	/** Absolute line number and column where the selection ends. */
+	private long caretLine = -1;
+	private int caretColumn;
+
+	/** Number of lines in the store when the view was last updated. */
+	private int lineCount = 1;
+
+	public ConsoleLineView(final LineStore store, final ConsoleStyles styles) {
+		this.store = store;
+		this.styles = styles;
+
+		final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+		fonts[0] = font;
+		fonts[BOLD] = font.deriveFont(Font.BOLD);
+		fonts[ITALIC] = font.deriveFont(Font.ITALIC);
+		fonts[BOLD | ITALIC] = font.deriveFont(Font.BOLD | Font.ITALIC);
+		setFont(font);
+		final FontMetrics fm = getFontMetrics(font);
+		lineHeight = fm.getHeight();
+		charWidth = fm.charWidth('m');
+		ascent = fm.getAscent();
+
+		setOpaque(true);
+		setBackground(Color.white);
+		setForeground(Color.black);
+		final Color selection = UIManager.getColor("TextPane.selectionBackground");
+		selectionColor = selection == null ? new Color(0, 0, 255, 64) : //
+			new Color(selection.getRed(), selection.getGreen(), selection.getBlue(),
+				128);
+
+		setFocusable(true);
+		final MouseAdapter mouseHandler = new MouseAdapter() {
+
+			@Override
+			public void mousePressed(final MouseEvent e) {
+				requestFocusInWindow();
+				anchorLine = caretLine = lineNumberAt(e.getY());
+				anchorColumn = caretColumn = columnAt(e.getX());
+				repaint();
+			}
+
+			@Override
+			public void mouseDragged(final MouseEvent e) {
+				caretLine = lineNumberAt(e.getY());
+				caretColumn = columnAt(e.getX());
+				scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+				repaint();
+			}
+		};
+		addMouseListener(mouseHandler);
+		addMouseMotionListener(mouseHandler);
+
+		final int shortcutMask = GraphicsEnvironment.isHeadless() ? //
+			InputEvent.CTRL_MASK : Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+		getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C, shortcutMask),
+			"copy");
+		getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_A, shortcutMask),
+			"select-all");
+		getActionMap().put("copy", new AbstractAction() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				copy();
+			}
+		});
+		getActionMap().put("select-all", new AbstractAction() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				selectAll();
+			}
+		});
+	}
+
+	// -- ConsoleLineView methods --
+
+	/** Gets the height of each line, in pixels. */
+	public int getLineHeight() {
+		return lineHeight;
+	}
+
+	/** Gets the width of each column, in pixels. */
+	public int getCharWidth() {
+		return charWidth;
+	}
+
+	/** Gets the currently selected text, or null if nothing is selected. */
+	public String getSelectedText() {
+		if (!hasSelection()) return null;
+		final boolean forward = anchorLine < caretLine ||
+			anchorLine == caretLine && anchorColumn <= caretColumn;
+		final long startLine = forward ? anchorLine : caretLine;
+		final int startColumn = forward ? anchorColumn : caretColumn;
+		final long endLine = forward ? caretLine : anchorLine;
+		final int endColumn = forward ? caretColumn : anchorColumn;
+
+		final StringBuilder sb = new StringBuilder();
+		synchronized (store) {
+			final long firstLineNumber = store.getFirstLineNumber();
+			final long lastLineNumber = firstLineNumber + store.getLineCount() - 1;
+			for (long n = Math.max(startLine, firstLineNumber); //
+				n <= Math.min(endLine, lastLineNumber); n++)
+			{
+				final int line = (int) (n - firstLineNumber);
+				final int length = readLine(line, store.getLineLength(line));
+				final int start = n == startLine ? charIndex(startColumn, length) : 0;
+				final int end = n == endLine ? charIndex(endColumn, length) : length;
+				if (end > start) sb.append(lineChars, start, end - start);
+				if (n < endLine) sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Selects all text in the console. */
+	public void selectAll() {
+		final long firstLineNumber = store.getFirstLineNumber();
+		final int last = store.getLineCount() - 1;
+		anchorLine = firstLineNumber;
+		anchorColumn = 0;
+		caretLine = firstLineNumber + last;
+		caretColumn = Integer.MAX_VALUE;
+		repaint();
+	}
+
+	/** Copies the selected text to the system clipboard. */
+	public void copy() {
+		final String text = getSelectedText();
+		if (text == null) return;
+		getToolkit().getSystemClipboard().setContents(new StringSelection(text),
+			null);
+	}
+
+	// -- ConsoleRenderer methods --
+
+	@Override
+	public JComponent getView() {
+		return this;
+	}
+
+	@Override
+	public void load(final LineStore lines) {
+		lineCount = lines.getLineCount();
+		revalidate();
+		repaint();
+	}
+
+	@Override
+	public void append(final CharSequence text, final int style) {
+		// repaint everything from the previously last line onward
+		final int from = lineCount - 1;
+		lineCount = store.getLineCount();
+		revalidate();
+		repaint(0, from * lineHeight, Integer.MAX_VALUE / 2, //
+			(lineCount - from) * lineHeight);
+	}
+
+	@Override
+	public void evict(final int lines) {
+		lineCount = store.getLineCount();
+		// keep the same text in view, even though it moved up
+		final Component parent = getParent();
+		if (parent instanceof JViewport) {
+			final JViewport viewport = (JViewport) parent;
+			final Point p = viewport.getViewPosition();
+			viewport.setViewPosition(new Point(p.x, Math.max(0, p.y - lines *
+				lineHeight)));
+		}
+		revalidate();
+		repaint();
+	}
+
+	@Override
+	public void clear() {
+		lineCount = store.getLineCount();
+		anchorLine = caretLine = -1;
+		revalidate();
+		repaint();
+	}
+
+	@Override
+	public void scrollToBottom(final JScrollPane scrollPane) {
+		// NB: Lay out synchronously, so that our new size is known. This is
+		// cheap, since our preferred size is computed in constant time.
+		scrollPane.validate();
+		final JViewport viewport = scrollPane.getViewport();
+		final int y = Math.max(0, getHeight() - viewport.getExtentSize().height);
+		viewport.setViewPosition(new Point(0, y));
+	}
+
+	@Override
+	public void highlight(final ConsoleMatches newMatches) {
+		matches = newMatches;
+		repaint();
+	}
+
+	@Override
+	public void select(final long lineNumber, final int start, final int end) {
+		final int line = (int) (lineNumber - store.getFirstLineNumber());
+		if (line < 0 || line >= store.getLineCount()) return;
+		final int length = readLine(line, //
+			Math.min(store.getLineLength(line), end));
+		anchorLine = caretLine = lineNumber;
+		anchorColumn = columnIndex(start, length);
+		caretColumn = columnIndex(end, length);
+		scrollRectToVisible(new Rectangle(anchorColumn * charWidth, line *
+			lineHeight, Math.max(1, caretColumn - anchorColumn) * charWidth,
+			lineHeight));
+		repaint();
+	}
+
+	// -- Component methods --
+
+	@Override
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet()) return super.getPreferredSize();
+		final int width = (store.getMaxColumns() + 1) * charWidth;
+		final long height = (long) store.getLineCount() * lineHeight;
+		return new Dimension(width, (int) Math.min(height, Integer.MAX_VALUE));
+	}
+
+	// -- Scrollable methods --
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return getPreferredSize();
+	}
+
+	@Override
+	public int getScrollableUnitIncrement(final Rectangle visibleRect,
+		final int orientation, final int direction)
+	{
+		return orientation == SwingConstants.VERTICAL ? lineHeight : charWidth;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement(final Rectangle visibleRect,
+		final int orientation, final int direction)
+	{
+		if (orientation == SwingConstants.VERTICAL) {
+			return Math.max(lineHeight, visibleRect.height - lineHeight);
+		}
+		return Math.max(charWidth, visibleRect.width - charWidth);
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		final Component parent = getParent();
+		return parent instanceof JViewport &&
+			parent.getWidth() > getPreferredSize().width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		final Component parent = getParent();
+		return parent instanceof JViewport &&
+			parent.getHeight() > getPreferredSize().height;
+	}
+
+	// -- Internal methods --
+
+	@Override
+	protected void paintComponent(final Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		updateStyles();
+		final int first = Math.max(0, clip.y / lineHeight);
+		final int last = Math.min(store.getLineCount() - 1, //
+			(clip.y + clip.height - 1) / lineHeight);
+		final int firstColumn = clip.x / charWidth;
+		final int lastColumn = (clip.x + clip.width) / charWidth + 1;
+		for (int line = first; line <= last; line++) {
+			paintLine(g, line, firstColumn, lastColumn);
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Paints the visible columns of the given line. */
+	private void paintLine(final Graphics g, final int line,
+		final int firstColumn, final int lastColumn)
+	{
+		final int y = line * lineHeight;
+
+		// NB: Each character occupies at least one column,
+		// so there is no need to read beyond the last visible column.
+		final int length = readLine(line, //
+			Math.min(store.getLineLength(line), lastColumn));
+		if (paintChars.length < lastColumn + LineStore.TAB_SIZE) {
+			paintChars = new char[2 * (lastColumn + LineStore.TAB_SIZE)];
+		}
+
+		final long lineStart = store.getLineStart(line);
+		final int runCount = store.getRunCount();
+		int run = store.getLineRun(line);
+		int style = run < 0 ? ConsoleStyles.STDOUT_LOCAL : store.getRunStyle(run);
+		long nextRun = run >= 0 && run + 1 < runCount ? //
+			store.getRunStart(run + 1) : Long.MAX_VALUE;
+
+		int column = 0, segment = 0;
+		for (int i = 0; i < length && column < lastColumn; i++) {
+			while (lineStart + i >= nextRun) {
+				// style changes here; paint the segment so far
+				paintSegment(g, segment, column, style, y, firstColumn);
+				segment = column;
+				style = store.getRunStyle(++run);
+				nextRun = run + 1 < runCount ? store.getRunStart(run + 1) : //
+					Long.MAX_VALUE;
+			}
+			final char c = lineChars[i];
+			if (c == '\t') {
+				final int tabStop = (column / LineStore.TAB_SIZE + 1) *
+					LineStore.TAB_SIZE;
+				while (column < tabStop) paintChars[column++] = ' ';
+			}
+			else paintChars[column++] = c;
+		}
+		paintSegment(g, segment, column, style, y, firstColumn);
+		paintMatches(g, store.getFirstLineNumber() + line, y, length);
+		paintSelection(g, store.getFirstLineNumber() + line, y, column);
+	}
+
+	/** Paints a range of columns of the current line, in the given style. */
+	private void paintSegment(final Graphics g, final int start, final int end,
+		final int style, final int y, final int firstColumn)
+	{
+		final int from = Math.max(start, firstColumn);
+		if (from >= end) return;
+		final int x = from * charWidth;
+		final int width = (end - from) * charWidth;
+		if (backgrounds[style] != null) {
+			g.setColor(backgrounds[style]);
+			g.fillRect(x, y, width, lineHeight);
+		}
+		g.setColor(foregrounds[style]);
+		g.setFont(fonts[fontFlags[style]]);
+		g.drawChars(paintChars, from, end - from, x, y + ascent);
+		if (underlines[style]) {
+			g.drawLine(x, y + ascent + 1, x + width - 1, y + ascent + 1);
+		}
+	}
+
+	/** Paints the selection highlight over the given line, if selected. */
+	private void paintSelection(final Graphics g, final long lineNumber,
+		final int y, final int lineColumns)
+	{
+		if (!hasSelection()) return;
+		final boolean forward = anchorLine < caretLine ||
+			anchorLine == caretLine && anchorColumn <= caretColumn;
+		final long startLine = forward ? anchorLine : caretLine;
+		final long endLine = forward ? caretLine : anchorLine;
+		if (lineNumber < startLine || lineNumber > endLine) return;
+		final int start = lineNumber == startLine ? //
+			(forward ? anchorColumn : caretColumn) : 0;
+		final int end = lineNumber == endLine ? //
+			(forward ? caretColumn : anchorColumn) : lineColumns + 1;
+		final int from = Math.min(start, lineColumns + 1);
+		final int to = Math.min(end, Math.max(lineColumns, from) + 1);
+		if (to <= from) return;
+		g.setColor(selectionColor);
+		g.fillRect(from * charWidth, y, (to - from) * charWidth, lineHeight);
+	}
+
+	/**
+	 * Paints the highlights of the search matches on the given line, as far as
+	 * the line was read into {@link #lineChars}.
+	 */
+	private void paintMatches(final Graphics g, final long lineNumber,
+		final int y, final int length)
+	{
+		if (matches == null) return;
+		g.setColor(matchColor);
+		for (long i = matches.indexOf(lineNumber); i < matches.end() && //
+			matches.getLine(i) == lineNumber; i++)
+		{
+			final int start = matches.getStart(i);
+			if (start > length) break; // beyond the visible columns
+			final int from = columnIndex(start, length);
+			final int to = columnIndex(Math.min(matches.getEnd(i), length), length);
+			g.fillRect(from * charWidth, y, Math.max(1, to - from) * charWidth,
+				lineHeight);
+		}
+	}
+
+	private boolean hasSelection() {
+		return anchorLine >= 0 &&
+			(anchorLine != caretLine || anchorColumn != caretColumn);
+	}
+
+	/**
+	 * Reads the first characters of the given line into {@link #lineChars}.
+	 *
+	 * @return The number of characters read.
+	 */
+	private int readLine(final int line, final int length) {
+		if (lineChars.length < length) lineChars = new char[2 * length];
+		store.getChars(store.getLineStart(line), length, lineChars, 0);
+		return length;
+	}
+
+	/**
+	 * Converts a character index of the line in {@link #lineChars} to a display
+	 * column, taking tab stops into account.
+	 */
+	private int columnIndex(final int index, final int length) {
+		int column = 0;
+		for (int i = 0; i < index && i < length; i++) {
+			column = lineChars[i] == '\t' ? //
+				(column / LineStore.TAB_SIZE + 1) * LineStore.TAB_SIZE : column + 1;
+		}
+		return column;
+	}
+
+	/**
+	 * Converts a display column of the line in {@link #lineChars} to a character
+	 * index, taking tab stops into account.
+	 */
+	private int charIndex(final int targetColumn, final int length) {
+		int column = 0;
+		for (int i = 0; i < length; i++) {
+			if (column >= targetColumn) return i;
+			column = lineChars[i] == '\t' ? //
+				(column / LineStore.TAB_SIZE + 1) * LineStore.TAB_SIZE : column + 1;
+		}
+		return length;
+	}
+
+	/** Gets the absolute number of the line at the given y coordinate. */
+	private long lineNumberAt(final int y) {
+		final int line = Math.max(0, Math.min(store.getLineCount() - 1, //
+			y / lineHeight));
+		return store.getFirstLineNumber() + line;
+	}
+
+	/** Gets the column nearest to the given x coordinate. */
+	private int columnAt(final int x) {
+		return Math.max(0, (x + charWidth / 2) / charWidth);
+	}
+
+	/** Caches the rendering attributes of any newly defined styles. */
+	private void updateStyles() {
+		final int count = styles.size();
+		if (foregrounds.length == count) return;
+		foregrounds = new Color[count];
+		backgrounds = new Color[count];
+		fontFlags = new int[count];
+		underlines = new boolean[count];
+		for (int id = 0; id < count; id++) {
+			final Style style = styles.get(id);
+			final Object fg = style.getAttribute(StyleConstants.Foreground);
+			final Object bg = style.getAttribute(StyleConstants.Background);
+			foregrounds[id] = fg instanceof Color ? (Color) fg : getForeground();
+			backgrounds[id] = bg instanceof Color ? (Color) bg : null;
+			fontFlags[id] = (StyleConstants.isBold(style) ? BOLD : 0) |
+				(StyleConstants.isItalic(style) ? ITALIC : 0);
+			underlines[id] = StyleConstants.isUnderline(style);
+		}
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.util.Arrays;
+
+/**
+ * The matches of a console search, in order, as absolute line numbers and
+ * character ranges within those lines. Matches are kept in primitive arrays,
+ * so that millions of them stay compact. Each match keeps its index for as long
+ * as it is retained, so that stepping to the next or previous match takes
+ * constant time.
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+class ConsoleMatches {
+
+	private long[] lines = new long[64];
+	private int[] starts = new int[64];
+	private int[] ends = new int[64];
+
+	/** Index of the match in the first array slot. */
+	private long offset;
+
+	/** Index of the first match which has not been evicted. */
+	private long first;
+
+	/** Index just past the last match. */
+	private long end;
+
+	// -- ConsoleMatches methods --
+
+	/** Gets the index of the first retained match. */
+	public long first() {
+		return first;
+	}
+
+	/** Gets the index just past the last match. */
+	public long end() {
+		return end;
+	}
+
+	/** Gets the number of retained matches. */
+	public int size() {
+		return (int) (end - first);
+	}
+
+	/** Gets the absolute line number of the given match. */
+	public long getLine(final long index) {
+		return lines[slot(index)];
+	}
+
+	/** Gets the index within its line of the given match's first character. */
+	public int getStart(final long index) {
+		return starts[slot(index)];
+	}
+
+	/** Gets the index within its line just past the given match's end. */
+	public int getEnd(final long index) {
+		return ends[slot(index)];
+	}
+
+	/** Adds a match, which must come after all existing matches. */
+	public void add(final long line, final int start, final int matchEnd) {
+		if (end - offset == lines.length) grow();
+		final int slot = slot(end++);
+		lines[slot] = line;
+		starts[slot] = start;
+		ends[slot] = matchEnd;
+	}
+
+	/** Adds all retained matches of the given instance. */
+	public void addAll(final ConsoleMatches matches) {
+		for (long i = matches.first; i < matches.end; i++) {
+			add(matches.getLine(i), matches.getStart(i), matches.getEnd(i));
+		}
+	}
+
+	/**
+	 * Gets the index of the first retained match on or after the given line, or
+	 * {@link #end()} if there is none.
+	 */
+	public long indexOf(final long line) {
+		int lo = slot(first), hi = slot(end);
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (lines[mid] < line) lo = mid + 1;
+			else hi = mid;
+		}
+		return offset + lo;
+	}
+
+	/** Discards the matches on lines before the given line. */
+	public void evict(final long line) {
+		first = indexOf(line);
+	}
+
+	/** Discards all matches. Indices continue to increase. */
+	public void clear() {
+		first = offset = end;
+	}
+
+	// -- Helper methods --
+
+	private int slot(final long index) {
+		return (int) (index - offset);
+	}
+
+	/** Makes room for another match. */
+	private void grow() {
+		final int size = size();
+		if (size <= lines.length / 2) {
+			// reclaim the space of evicted matches
+			final int from = slot(first);
+			System.arraycopy(lines, from, lines, 0, size);
+			System.arraycopy(starts, from, starts, 0, size);
+			System.arraycopy(ends, from, ends, 0, size);
+			offset = first;
+			return;
+		}
+		lines = Arrays.copyOf(lines, 2 * lines.length);
+		starts = Arrays.copyOf(starts, 2 * starts.length);
+		ends = Arrays.copyOf(ends, 2 * ends.length);
+	}
+
+}
@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency measurements of a {@link SwingConsolePane}, for
+ * diagnosing consoles which cannot keep up with their output.
+ * <p>
+ * Counters are updated by the threads producing output, without locking;
+ * latencies are recorded by the EDT as output is written to the display.
+ * Rates are computed over the interval between successive rate queries, but
+ * no shorter than one second.
+ * </p>
+ */
+public class ConsoleMetrics {
+
+	private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	private final OutputEventRing queue;
+
+	private final LongAdder events = new LongAdder();
+	private final LongAdder chars = new LongAdder();
+
+	private final Histogram latency = new Histogram();
+	private final Histogram insertTime = new Histogram();
+
+	// NB: Rate sampling state; guarded by this object.
+	private long sampleTime = System.nanoTime();
+	private long sampleEvents;
+	private long sampleChars;
+	private double eventRate;
+	private double charRate;
+
+	ConsoleMetrics(final OutputEventRing queue) {
+		this.queue = queue;
+	}
+
+	// -- ConsoleMetrics methods --
+
+	/** Gets the total number of output events appended to the console. */
+	public long getEventCount() {
+		return events.sum();
+	}
+
+	/** Gets the total number of characters appended to the console. */
+	public long getCharCount() {
+		return chars.sum();
+	}
+
+	/** Gets the recent rate of appended output events, per second. */
+	public synchronized double getEventRate() {
+		sample();
+		return eventRate;
+	}
+
+	/** Gets the recent rate of appended characters, per second. */
+	public synchronized double getCharRate() {
+		sample();
+		return charRate;
+	}
+
+	/** Gets the number of output events waiting to be displayed. */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/** Gets the number of events discarded because the output queue was full. */
+	public long getDroppedEventCount() {
+		return queue.getDroppedCount();
+	}
+
+	/** Gets the number of events whose producer waited for queue space. */
+	public long getBlockedEventCount() {
+		return queue.getBlockedCount();
+	}
+
+	/**
+	 * Gets the distribution of times from an output event being appended until
+	 * its text is written to the display on the EDT.
+	 */
+	public Histogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Gets the distribution of times spent on the EDT writing each batch of
+	 * output to the display, including evicting old lines.
+	 */
+	public Histogram getInsertTime() {
+		return insertTime;
+	}
+
+	/** Resets all counters and histograms. */
+	public synchronized void reset() {
+		events.reset();
+		chars.reset();
+		latency.reset();
+		insertTime.reset();
+		sampleTime = System.nanoTime();
+		sampleEvents = sampleChars = 0;
+		eventRate = charRate = 0;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return String.format("%.0f events/s, %.0f chars/s, queue %d, " +
+			"latency p50 %s p99 %s max %s, insert p99 %s max %s", getEventRate(),
+			getCharRate(), getQueueDepth(), format(latency.getPercentile(50)),
+			format(latency.getPercentile(99)), format(latency.getMax()), format(
+				insertTime.getPercentile(99)), format(insertTime.getMax()));
+	}
+
+	// -- Internal methods --
+
+	/** Records an appended output event. Called on the producing thread. */
+	void appended(final int length) {
+		events.increment();
+		chars.add(length);
+	}
+
+	// -- Helper methods --
+
+	/** Recomputes the rates, if the sample interval has elapsed. */
+	private void sample() {
+		final long now = System.nanoTime();
+		final long elapsed = now - sampleTime;
+		if (elapsed < SAMPLE_INTERVAL) return;
+		final long eventCount = events.sum();
+		final long charCount = chars.sum();
+		final double seconds = elapsed / 1e9;
+		eventRate = (eventCount - sampleEvents) / seconds;
+		charRate = (charCount - sampleChars) / seconds;
+		sampleTime = now;
+		sampleEvents = eventCount;
+		sampleChars = charCount;
+	}
+
+	private static String format(final long nanos) {
+		if (nanos < 1000000) return nanos / 1000 + " us";
+		return nanos / 1000000 + " ms";
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A histogram of durations, with buckets of exponentially increasing width:
+	 * bucket {@code i} counts durations in [2<sup>i-1</sup>, 2<sup>i</sup>)
+	 * microseconds. Recording is allocation-free and lock-free.
+	 */
+	public static class Histogram {
+
+		private static final int BUCKETS = 40;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private volatile long max;
+
+		/** Records a duration, in nanoseconds. */
+		public void record(final long nanos) {
+			final long micros = Math.max(0, nanos / 1000);
+			final int bucket = Math.min(BUCKETS - 1, //
+				64 - Long.numberOfLeadingZeros(micros));
+			counts.incrementAndGet(bucket);
+			count.increment();
+			total.add(nanos);
+			if (nanos > max) max = nanos;
+		}
+
+		/** Gets the number of recorded durations. */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/** Gets the mean recorded duration, in nanoseconds. */
+		public long getMean() {
+			final long n = count.sum();
+			return n == 0 ? 0 : total.sum() / n;
+		}
+
+		/** Gets the longest recorded duration, in nanoseconds. */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Gets an upper bound of the given percentile of recorded durations, in
+		 * nanoseconds. The bound is accurate to within a factor of two.
+		 */
+		public long getPercentile(final double percentile) {
+			final long n = count.sum();
+			if (n == 0) return 0;
+			final long rank = (long) Math.ceil(percentile / 100 * n);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts.get(i);
+				if (seen >= rank) return Math.min(max, (1L << i) * 1000);
+			}
+			return max;
+		}
+
+		/** Discards all recorded durations. */
+		public void reset() {
+			for (int i = 0; i < BUCKETS; i++) {
+				counts.set(i, 0);
+			}
+			count.reset();
+			total.reset();
+			max = 0;
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+
+/**
+ * Displays the text of a console's {@link LineStore}. The console writes each
+ * batch of output to its line store first, then passes the same changes to its
+ * renderer.
+ * <p>
+ * All methods are called on the EDT.
+ * </p>
+ */
+interface ConsoleRenderer {
+
+	/** Gets the component to show inside the console's scroll pane. */
+	JComponent getView();
+
+	/**
+	 * Renders all text which the given line store already contains. Called once,
+	 * before any other changes are passed on.
+	 */
+	void load(LineStore store);
+
+	/** Renders text which was just appended to the line store. */
+	void append(CharSequence text, int style);
+
+	/** Discards the given number of lines from the start of the text. */
+	void evict(int lines);
+
+	/** Discards all text. */
+	void clear();
+
+	/** Scrolls the given scroll pane so that the last line is visible. */
+	void scrollToBottom(JScrollPane scrollPane);
+
+	/**
+	 * Highlights the given search matches, or removes the highlights if null.
+	 * Only the matches on the visible lines are rendered; this method is called
+	 * again whenever matches are added or evicted.
+	 */
+	void highlight(ConsoleMatches matches);
+
+	/**
+	 * Selects the given character range of a line, and scrolls it into view.
+	 *
+	 * @param lineNumber The absolute number of the line.
+	 * @param start Index within the line of the range's first character.
+	 * @param end Index within the line just past the range.
+	 */
+	void select(long lineNumber, int start, int end);
+
+}
@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.text.Style;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
+
+import org.scijava.console.OutputEvent;
+
+/**
+ * The table of text styles used by the console, addressed by integer ID. Both
+ * the document-based and the line-based console renderers draw text in these
+ * styles, so that the text can be stored compactly as runs of style IDs.
+ * <p>
+ * Besides the four base styles, the table holds styles derived from them by
+ * ANSI text attributes (see {@link AnsiParser}). Derived styles are created on
+ * first use and interned by their attributes, up to a fixed maximum.
+ * </p>
+ *
+ * @see LineStore
+ */
+class ConsoleStyles {
+
+	public static final int STDOUT_LOCAL = 0;
+	public static final int STDERR_LOCAL = 1;
+	public static final int STDOUT_GLOBAL = 2;
+	public static final int STDERR_GLOBAL = 3;
+
+	/** Attribute flag for bold text. */
+	public static final int BOLD = 1;
+
+	/** Attribute flag for italic text. */
+	public static final int ITALIC = 2;
+
+	/** Attribute flag for underlined text. */
+	public static final int UNDERLINE = 4;
+
+	/** Attribute flag for text with swapped foreground and background. */
+	public static final int INVERSE = 8;
+
+	/** Maximum number of styles; further attributes are ignored. */
+	private static final int MAX_STYLES = 1024;
+
+	private static final long FG_SET = 1L << 4;
+	private static final int FG_SHIFT = 5;
+	private static final long BG_SET = 1L << 29;
+	private static final int BG_SHIFT = 30;
+	private static final int BASE_SHIFT = 56;
+
+	private final StyleContext styleContext = new StyleContext();
+	private final List<Style> styles = new ArrayList<>();
+
+	/** The base style of each style. */
+	private int[] bases = new int[16];
+
+	/** Hash table of derived styles: keys, and style IDs plus one. */
+	private final long[] keys = new long[2 * MAX_STYLES];
+	private final int[] ids = new int[2 * MAX_STYLES];
+
+	public ConsoleStyles() {
+		final Style stdoutLocal =
+			createStyle("stdoutLocal", null, Color.black, null, null);
+		final Style stderrLocal =
+			createStyle("stderrLocal", null, Color.red, null, null);
+		createStyle("stdoutGlobal", stdoutLocal, null, null, true);
+		createStyle("stderrGlobal", stderrLocal, null, null, true);
+	}
+
+	// -- ConsoleStyles methods --
+
+	/** Gets the style context which owns the console's styles. */
+	public StyleContext getStyleContext() {
+		return styleContext;
+	}
+
+	/** Gets the style with the given ID. */
+	public Style get(final int id) {
+		return styles.get(id);
+	}
+
+	/**
+	 * Gets the ID of the style with the given attributes, creating it if needed.
+	 *
+	 * @param base The ID of the base style from which the style derives.
+	 * @param attributes Attributes, as encoded by {@link #attributes}.
+	 * @return The style ID, or the base style's ID if the table is full.
+	 */
+	public int id(final int base, final long attributes) {
+		if (attributes == 0) return base;
+		final long key = attributes | (long) base << BASE_SHIFT;
+		final int mask = keys.length - 1;
+		int slot = (int) (key ^ key >>> 29) * 0x9E3779B9 & mask;
+		while (ids[slot] != 0) {
+			if (keys[slot] == key) return ids[slot] - 1;
+			slot = slot + 1 & mask;
+		}
+		if (styles.size() >= MAX_STYLES) return base;
+		final int id = createDerivedStyle(base, attributes);
+		keys[slot] = key;
+		ids[slot] = id + 1;
+		return id;
+	}
+
+	/** Gets the ID of the base style from which the given style derives. */
+	public int base(final int id) {
+		return bases[id];
+	}
+
+	/** Gets the number of styles in the table. */
+	public int size() {
+		return styles.size();
+	}
+
+	/** Gets the ID of the base style for the given output event. */
+	public static int id(final OutputEvent event) {
+		final boolean stderr = event.getSource() == OutputEvent.Source.STDERR;
+		final boolean contextual = event.isContextual();
+		if (stderr) return contextual ? STDERR_LOCAL : STDERR_GLOBAL;
+		return contextual ? STDOUT_LOCAL : STDOUT_GLOBAL;
+	}
+
+	/**
+	 * Encodes text attributes for {@link #id(int, long)}.
+	 *
+	 * @param flags Any of {@link #BOLD}, {@link #ITALIC}, {@link #UNDERLINE} and
+	 *          {@link #INVERSE}.
+	 * @param foreground Foreground color as 0xRRGGBB, or -1 for the default.
+	 * @param background Background color as 0xRRGGBB, or -1 for the default.
+	 */
+	public static long attributes(final int flags, final int foreground,
+		final int background)
+	{
+		long attributes = flags;
+		if (foreground >= 0) {
+			attributes |= FG_SET | (long) foreground << FG_SHIFT;
+		}
+		if (background >= 0) {
+			attributes |= BG_SET | (long) background << BG_SHIFT;
+		}
+		return attributes;
+	}
+
+	/** Gets the output source of text in the given base style. */
+	public static OutputEvent.Source source(final int id) {
+		return id == STDERR_LOCAL || id == STDERR_GLOBAL ? //
+			OutputEvent.Source.STDERR : OutputEvent.Source.STDOUT;
+	}
+
+	/** Gets whether text in the given base style is contextual output. */
+	public static boolean isContextual(final int id) {
+		return id == STDOUT_LOCAL || id == STDERR_LOCAL;
+	}
+
+	// -- Helper methods --
+
+	private Style createStyle(final String name, final Style parent,
+		final Color foreground, final Boolean bold, final Boolean italic)
+	{
+		final Style style = styleContext.addStyle(name, parent);
+		if (foreground != null) StyleConstants.setForeground(style, foreground);
+		if (bold != null) StyleConstants.setBold(style, bold);
+		if (italic != null) StyleConstants.setItalic(style, italic);
+		addStyle(style, styles.size());
+		return style;
+	}
+
+	/** Creates a style deriving from the given base style. */
+	private int createDerivedStyle(final int base, final long attributes) {
+		final Style parent = styles.get(base);
+		final int flags = (int) (attributes & 0xf);
+		Color foreground = (attributes & FG_SET) == 0 ? null : //
+			new Color((int) (attributes >>> FG_SHIFT & 0xffffff));
+		Color background = (attributes & BG_SET) == 0 ? null : //
+			new Color((int) (attributes >>> BG_SHIFT & 0xffffff));
+		if ((flags & INVERSE) != 0) {
+			final Color fg = foreground != null ? foreground : //
+				StyleConstants.getForeground(parent);
+			foreground = background != null ? background : Color.white;
+			background = fg;
+		}
+
+		final Style style = styleContext.addStyle(null, parent);
+		if (foreground != null) StyleConstants.setForeground(style, foreground);
+		if (background != null) StyleConstants.setBackground(style, background);
+		if ((flags & BOLD) != 0) StyleConstants.setBold(style, true);
+		if ((flags & ITALIC) != 0) StyleConstants.setItalic(style, true);
+		if ((flags & UNDERLINE) != 0) StyleConstants.setUnderline(style, true);
+		final int id = styles.size();
+		addStyle(style, base);
+		return id;
+	}
+
+	private void addStyle(final Style style, final int base) {
+		if (bases.length == styles.size()) {
+			bases = Arrays.copyOf(bases, 2 * bases.length);
+		}
+		bases[styles.size()] = base;
+		styles.add(style);
+	}
+
+}
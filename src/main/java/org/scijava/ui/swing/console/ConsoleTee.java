@@ -0,0 +1,320 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Continuously copies the console's text to a file, straight from its
+ * {@link LineStore}. Whenever output is appended, a background task writes the
+ * new text in chunks, so the EDT never waits on the disk. The console must not
+ * evict text which is not yet written; see {@link #getUnwrittenOffset()}.
+ * <p>
+ * If the file name ends in {@code .gz}, the file is gzip-compressed. If a
+ * maximum size is given, the file is rotated when it exceeds that size: it is
+ * renamed with the suffix {@code .1} (before any {@code .gz} extension),
+ * earlier files move up by one, and the oldest is deleted.
+ * </p>
+ */
+class ConsoleTee {
+
+	private final LineStore store;
+	private final File file;
+	private final long maxBytes;
+	private final int maxFiles;
+	private final ThreadService threadService;
+	private final LogService log;
+
+	/** Maximum number of characters written at a time, if never rotating. */
+	private static final int MAX_CHUNK = 64 * 1024;
+
+	/** Whether a write task is scheduled or running. */
+	private final AtomicBoolean writing = new AtomicBoolean();
+
+	/** Whether the store was cleared since the last write. */
+	private volatile boolean cleared;
+
+	/** Whether copying should stop, once the remaining text is written. */
+	private volatile boolean closed;
+
+	/**
+	 * Absolute store offset just past the last character to write, once
+	 * closed; text appended later is not copied.
+	 */
+	private volatile long closeOffset = Long.MAX_VALUE;
+
+	/** Whether the file has been closed. */
+	private volatile boolean finished;
+
+	/** Absolute store offset just past the last character written. */
+	private volatile long written;
+
+	private CountingOutputStream bytes;
+	private Writer out;
+
+	/**
+	 * Opens the file, and starts copying to it, beginning with the text the
+	 * store already contains.
+	 *
+	 * @param maxBytes Size in bytes beyond which the file is rotated, or 0 to
+	 *          never rotate.
+	 * @param maxFiles Number of rotated files to keep, in addition to the
+	 *          current one.
+	 */
+	public ConsoleTee(final LineStore store, final File file,
+		final long maxBytes, final int maxFiles, final ThreadService threadService,
+		final LogService log) throws IOException
+	{
+		this.store = store;
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+		this.threadService = threadService;
+		this.log = log;
+		written = store.getLineStart(0);
+		open();
+		outputAppended();
+	}
+
+	// -- ConsoleTee methods --
+
+	public File getFile() {
+		return file;
+	}
+
+	/** Schedules the writing of any new text. */
+	public void outputAppended() {
+		if (!closed) schedule();
+	}
+
+	/** Notes that the store was cleared, so its offsets start over. */
+	public void cleared() {
+		cleared = true;
+		outputAppended();
+	}
+
+	/**
+	 * Stops copying. Returns at once; the text appended so far is written, and
+	 * the file closed, in the background. Text appended from now on is not
+	 * written.
+	 */
+	public void close() {
+		closeOffset = store.getEndOffset();
+		closed = true;
+		schedule();
+	}
+
+	/** Gets whether the file has been closed. */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Gets the absolute store offset of the first character not yet written,
+	 * or {@link Long#MAX_VALUE} once the file has been closed. The store must
+	 * not evict text beyond this offset, or it will be missing from the file.
+	 */
+	public long getUnwrittenOffset() {
+		if (finished) return Long.MAX_VALUE;
+		return cleared ? 0 : written;
+	}
+
+	/**
+	 * Opens a writer for the given file, compressed if its name ends in
+	 * {@code .gz}.
+	 */
+	public static Writer writer(final File file) throws IOException {
+		return writer(new FileOutputStream(file), file);
+	}
+
+	// -- Helper methods --
+
+	/** Schedules a write task, unless one is already scheduled or running. */
+	private void schedule() {
+		if (!writing.compareAndSet(false, true)) return;
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				writeNewText();
+			}
+		});
+	}
+
+	/** Writes the new text; runs on a background thread. */
+	private void writeNewText() {
+		while (true) {
+			try {
+				if (writeChunk()) continue;
+			}
+			catch (final IOException exc) {
+				log.error("Cannot write console output to " + file, exc);
+				closed = true;
+			}
+			if (closed) {
+				// NB: Keep the writing flag set, so no task is scheduled again.
+				finish();
+				return;
+			}
+			writing.set(false);
+			// NB: Check for text, a clear or a close which arrived meanwhile.
+			if (!closed && !cleared && store.getEndOffset() <= written) return;
+			if (!writing.compareAndSet(false, true)) return;
+		}
+	}
+
+	/**
+	 * Writes the next chunk of new text, rotating the file first if needed.
+	 *
+	 * @return False if there was no new text to write.
+	 */
+	private boolean writeChunk() throws IOException {
+		if (cleared) {
+			written = 0;
+			cleared = false;
+		}
+		final long end = Math.min(store.getEndOffset(), closeOffset);
+		if (written >= end) {
+			out.flush();
+			return false;
+		}
+		if (maxBytes > 0 && bytes.getCount() >= maxBytes) rotate();
+		// NB: Write a chunk at a time, so we can rotate in between.
+		written = store.write(out, written, written + Math.min(end - written,
+			maxChunk()));
+		return true;
+	}
+
+	/** Gets the most characters to write before checking the file size. */
+	private long maxChunk() {
+		return maxBytes > 0 ? Math.max(1024, Math.min(MAX_CHUNK, maxBytes / 4))
+			: MAX_CHUNK;
+	}
+
+	/** Closes the file. */
+	private void finish() {
+		try {
+			out.close();
+		}
+		catch (final IOException exc) {
+			log.error("Cannot close console file " + file, exc);
+		}
+		finished = true;
+	}
+
+	private void open() throws IOException {
+		bytes = new CountingOutputStream(new FileOutputStream(file));
+		out = writer(bytes, file);
+	}
+
+	/** Moves the current file aside, and starts a new one. */
+	private void rotate() throws IOException {
+		out.close();
+		final File oldest = rotated(maxFiles);
+		if (oldest.exists() && !oldest.delete()) {
+			throw new IOException("Cannot delete " + oldest);
+		}
+		for (int i = maxFiles - 1; i >= 0; i--) {
+			final File source = i == 0 ? file : rotated(i);
+			if (source.exists() && !source.renameTo(rotated(i + 1))) {
+				throw new IOException("Cannot rename " + source);
+			}
+		}
+		open();
+	}
+
+	/** Gets the name of the given rotated file. */
+	private File rotated(final int index) {
+		final String name = file.getName();
+		final String base = gzip(file) ? name.substring(0, name.length() - 3) : //
+			name;
+		return new File(file.getParentFile(), base + "." + index + //
+			(gzip(file) ? ".gz" : ""));
+	}
+
+	private static Writer writer(final OutputStream stream, final File file)
+		throws IOException
+	{
+		// NB: Flush compressed output too, so the file can be followed.
+		final OutputStream os = gzip(file) ? //
+			new GZIPOutputStream(stream, true) : stream;
+		return new BufferedWriter(new OutputStreamWriter(os,
+			StandardCharsets.UTF_8));
+	}
+
+	private static boolean gzip(final File file) {
+		return file.getName().endsWith(".gz");
+	}
+
+	// -- Helper classes --
+
+	/** Counts the bytes written to the file. */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		public CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len)
+			throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.JScrollPane;
+
+import org.scijava.console.OutputEvent;
+import org.scijava.ui.swing.StaticSwingUtils;
+
+/**
+ * A live, filtered projection of a {@link SwingConsolePane}'s output, showing
+ * only the output which meets the criteria of a {@link ConsoleFilter}.
+ * <p>
+ * The view keeps its own line store and {@link ConsoleLineView}, so it is
+ * cheap to create, and several views can be shown side by side. It is seeded
+ * once from the console's existing text, then maintained incrementally: the
+ * console passes the text of each event which passes the filter to the view
+ * as it is written. Since the console's stored text does not record
+ * which thread produced it, views which filter by thread only show output
+ * produced after they were created. With a pattern, each line is tested once,
+ * when it is completed, so the current (unterminated) line is not shown.
+ * </p>
+ * <p>
+ * Views are created with {@link SwingConsolePane#addFilteredView}; all methods
+ * must be called on the EDT.
+ * </p>
+ */
+public class FilteredConsoleView {
+
+	/** Number of characters read from the console's store at a time. */
+	private static final int LOAD_CHUNK = 64 * 1024;
+
+	private final ConsoleFilter filter;
+	private final ConsoleStyles styles;
+	private final LineStore store = new HeapLineStore();
+	private final ConsoleLineView view;
+	private final JScrollPane scrollPane;
+
+	/** Reusable matcher for the filter's pattern, or null if there is none. */
+	private final Matcher matcher;
+
+	/** Text of the current line, while awaiting the pattern test. */
+	private final StringBuilder line = new StringBuilder();
+
+	/** End offset within {@link #line} of each style run. */
+	private int[] lineRunEnds = new int[8];
+
+	/** Style ID of each style run within {@link #line}. */
+	private int[] lineRunStyles = new int[8];
+
+	private int lineRunCount;
+
+	/** Accepted text which has not yet been written to the store. */
+	private final StringBuilder batch = new StringBuilder();
+
+	private int batchStyle;
+
+	/** Whether the view was scrolled to the bottom before the current update. */
+	private boolean atBottom;
+
+	/** Whether text has been written since the last {@link #flush}. */
+	private boolean dirty;
+
+	FilteredConsoleView(final ConsoleFilter filter, final ConsoleStyles styles) {
+		this.filter = filter;
+		this.styles = styles;
+		final Pattern pattern = filter.getPattern();
+		matcher = pattern == null ? null : pattern.matcher("");
+		view = new ConsoleLineView(store, styles);
+		scrollPane = new JScrollPane(view);
+		scrollPane.getHorizontalScrollBar().setUnitIncrement(view.getCharWidth());
+		scrollPane.getVerticalScrollBar().setUnitIncrement(2 * view
+			.getLineHeight());
+	}
+
+	// -- FilteredConsoleView methods --
+
+	public ConsoleFilter getFilter() {
+		return filter;
+	}
+
+	/** Gets the component which shows the view, within its own scroll pane. */
+	public JScrollPane getComponent() {
+		return scrollPane;
+	}
+
+	/** Gets the number of lines currently shown by the view. */
+	public int getLineCount() {
+		return store.getLineCount();
+	}
+
+	/** Gets the text currently shown by the view. */
+	public String getText() {
+		synchronized (store) {
+			final char[] text = new char[(int) store.length()];
+			store.getChars(store.getLineStart(0), text.length, text, 0);
+			return new String(text);
+		}
+	}
+
+	// -- Internal methods --
+
+	/** Appends the text of the given console store which passes the filter. */
+	void load(final LineStore source) {
+		final char[] buf = new char[LOAD_CHUNK];
+		final CharBuffer chars = CharBuffer.wrap(buf);
+		synchronized (source) {
+			final long start = source.getLineStart(0);
+			final long end = source.getEndOffset();
+			final int runCount = source.getRunCount();
+			for (int run = 0; run < runCount; run++) {
+				final int style = source.getRunStyle(run);
+				if (!filter.accepts(styles.base(style))) continue;
+				long pos = Math.max(start, source.getRunStart(run));
+				final long runEnd = run + 1 < runCount ? //
+					source.getRunStart(run + 1) : end;
+				while (pos < runEnd) {
+					final int length = (int) Math.min(LOAD_CHUNK, runEnd - pos);
+					source.getChars(pos, length, buf, 0);
+					append(chars, 0, length, style);
+					pos += length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests whether the given event passes the filter's source, scope and
+	 * thread criteria, so that its text should be {@link #append appended}.
+	 *
+	 * @param thread The thread which produced the event, or null if unknown.
+	 */
+	boolean accepts(final OutputEvent event, final Thread thread) {
+		return filter.accepts(event, thread);
+	}
+
+	/** Appends a range of an accepted event's text, subject to the pattern. */
+	void append(final CharSequence text, final int start, final int end,
+		final int style)
+	{
+		if (matcher == null) {
+			batch(text, start, end, style);
+			return;
+		}
+		// NB: Test each line against the pattern once, as soon as it is complete.
+		int lineStart = start;
+		for (int i = start; i < end; i++) {
+			if (text.charAt(i) != '\n') continue;
+			addToLine(text, lineStart, i + 1, style);
+			lineStart = i + 1;
+			matcher.reset(line).region(0, line.length() - 1);
+			if (matcher.find()) {
+				int runStart = 0;
+				for (int run = 0; run < lineRunCount; run++) {
+					batch(line, runStart, lineRunEnds[run], lineRunStyles[run]);
+					runStart = lineRunEnds[run];
+				}
+			}
+			line.setLength(0);
+			lineRunCount = 0;
+		}
+		if (lineStart < end) addToLine(text, lineStart, end, style);
+	}
+
+	/**
+	 * Writes out the accepted text, evicts the oldest lines beyond the given
+	 * limits, and keeps the view scrolled to the bottom if it was there before.
+	 */
+	void flush(final int maxLines, final int maxChars) {
+		write();
+		if (!dirty) return;
+		dirty = false;
+		final int evicted = store.trim(maxLines, maxChars);
+		if (evicted > 0) view.evict(evicted);
+		if (atBottom) view.scrollToBottom(scrollPane);
+	}
+
+	/** Discards all text, including any incomplete line. */
+	void clear() {
+		line.setLength(0);
+		lineRunCount = 0;
+		batch.setLength(0);
+		store.clear();
+		view.clear();
+	}
+
+	// -- Helper methods --
+
+	/** Adds text to the current line, awaiting the pattern test. */
+	private void addToLine(final CharSequence text, final int start,
+		final int end, final int style)
+	{
+		line.append(text, start, end);
+		if (lineRunCount > 0 && lineRunStyles[lineRunCount - 1] == style) {
+			lineRunEnds[lineRunCount - 1] = line.length();
+			return;
+		}
+		if (lineRunCount == lineRunEnds.length) {
+			lineRunEnds = Arrays.copyOf(lineRunEnds, 2 * lineRunCount);
+			lineRunStyles = Arrays.copyOf(lineRunStyles, 2 * lineRunCount);
+		}
+		lineRunEnds[lineRunCount] = line.length();
+		lineRunStyles[lineRunCount++] = style;
+	}
+
+	/** Adds accepted text to the batch, writing out the batch if needed. */
+	private void batch(final CharSequence text, final int start, final int end,
+		final int style)
+	{
+		if (start == end) return;
+		if (style != batchStyle) write();
+		batchStyle = style;
+		batch.append(text, start, end);
+	}
+
+	/** Writes the batch to the store and view. */
+	private void write() {
+		if (batch.length() == 0) return;
+		if (!dirty) {
+			atBottom = StaticSwingUtils.isScrolledToBottom(scrollPane);
+			dirty = true;
+		}
+		store.append(batch, batchStyle);
+		view.append(batch, batchStyle);
+		batch.setLength(0);
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link LineStore} which keeps its characters on the heap, in fixed-size
+ * chunks. Appending never copies previously stored text, and evicting old
+ * lines releases whole chunks at once.
+ */
+class HeapLineStore extends LineStore {
+
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/** The retained chunks of characters. */
+	private List<char[]> chunks = new ArrayList<>();
+
+	/** Absolute chunk number of the first retained chunk. */
+	private long firstChunk;
+
+	// -- Internal methods --
+
+	@Override
+	protected void writeChars(final long offset, final CharSequence text) {
+		final int length = text.length();
+		int done = 0;
+		while (done < length) {
+			final long pos = offset + done;
+			final char[] chunk = chunk(pos, true);
+			final int chunkPos = (int) (pos & CHUNK_MASK);
+			final int count = Math.min(length - done, CHUNK_SIZE - chunkPos);
+			copy(text, done, done + count, chunk, chunkPos);
+			done += count;
+		}
+	}
+
+	@Override
+	protected void readChars(final long offset, final int length,
+		final char[] dest, final int destPos)
+	{
+		int done = 0;
+		while (done < length) {
+			final long pos = offset + done;
+			final char[] chunk = chunk(pos, false);
+			final int chunkPos = (int) (pos & CHUNK_MASK);
+			final int count = Math.min(length - done, CHUNK_SIZE - chunkPos);
+			System.arraycopy(chunk, chunkPos, dest, destPos + done, count);
+			done += count;
+		}
+	}
+
+	@Override
+	protected void discardChars(final long offset) {
+		final int stale = (int) ((offset >> CHUNK_BITS) - firstChunk);
+		if (stale <= 0) return;
+		chunks.subList(0, stale).clear();
+		firstChunk += stale;
+	}
+
+	@Override
+	protected void clearChars() {
+		chunks = new ArrayList<>();
+		firstChunk = 0;
+	}
+
+	// -- Helper methods --
+
+	/** Gets the chunk containing the given absolute offset. */
+	private char[] chunk(final long offset, final boolean create) {
+		final int index = (int) ((offset >> CHUNK_BITS) - firstChunk);
+		if (create) {
+			while (index >= chunks.size()) chunks.add(new char[CHUNK_SIZE]);
+		}
+		return chunks.get(index);
+	}
+
+	/** Copies a range of characters, avoiding per-character calls if possible. */
+	private static void copy(final CharSequence text, final int start,
+		final int end, final char[] dest, final int destPos)
+	{
+		if (text instanceof String) {
+			((String) text).getChars(start, end, dest, destPos);
+		}
+		else if (text instanceof StringBuilder) {
+			((StringBuilder) text).getChars(start, end, dest, destPos);
+		}
+		else {
+			for (int i = start; i < end; i++) {
+				dest[destPos + i - start] = text.charAt(i);
+			}
+		}
+	}
+
+}
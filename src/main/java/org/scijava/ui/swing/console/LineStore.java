@@ -0,0 +1,422 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Line-indexed storage of console text, with per-line runs of
+ * {@link ConsoleStyles style IDs}.
+ * <p>
+ * The store keeps an index of line start offsets and style runs in primitive
+ * arrays, so that any line (and its styling) can be located in constant time
+ * regardless of how much text is stored. The characters themselves are kept by
+ * the concrete subclass. Offsets are absolute: they count every character ever
+ * appended since the store was last {@link #clear() cleared}, including those
+ * since evicted, so that they remain stable as old lines are dropped.
+ * </p>
+ * <p>
+ * The store always contains at least one line; the last line is the one
+ * currently being written, and has no terminating newline. All methods are
+ * synchronized, so that the store can be read from background threads while
+ * the EDT appends to it; {@link #write} locks the store for one chunk at a
+ * time, so that large amounts of text can be written out without holding up
+ * new output.
+ * </p>
+ */
+abstract class LineStore {
+
+	/** Number of characters copied out at a time by {@link #write}. */
+	private static final int WRITE_CHUNK = 64 * 1024;
+
+	/** Column width of a tab stop. */
+	public static final int TAB_SIZE = 8;
+
+	/** Absolute offset of the first character of each retained line. */
+	private final LongQueue lineStarts = new LongQueue();
+
+	/** Absolute number of the style run in effect at each line's start. */
+	private final LongQueue lineRuns = new LongQueue();
+
+	/** Absolute offset of the first character of each retained style run. */
+	private final LongQueue runStarts = new LongQueue();
+
+	/** Style ID of each retained style run. */
+	private final LongQueue runStyles = new LongQueue();
+
+	/** Absolute offset of the first retained character. */
+	private long startOffset;
+
+	/** Absolute offset just past the last character. */
+	private long endOffset;
+
+	/** Number of lines evicted since the last clear. */
+	private long firstLineNumber;
+
+	/** Number of style runs evicted since the last clear. */
+	private long firstRunNumber;
+
+	/** Display column at the end of the last line. */
+	private int column;
+
+	/** Widest line seen since the last clear, in display columns. */
+	private int maxColumns;
+
+	public LineStore() {
+		lineStarts.add(0);
+		lineRuns.add(0);
+	}
+
+	// -- LineStore methods --
+
+	/** Appends the given text, in the given style, to the end of the store. */
+	public synchronized void append(final CharSequence text, final int style) {
+		final int length = text.length();
+		if (length == 0) return;
+
+		addRun(style);
+		writeChars(endOffset, text);
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (c == '\n') {
+				lineStarts.add(endOffset + i + 1);
+				lineRuns.add(firstRunNumber + runStarts.size() - 1);
+				column = 0;
+				continue;
+			}
+			column = c == '\t' ? (column / TAB_SIZE + 1) * TAB_SIZE : column + 1;
+			if (column > maxColumns) maxColumns = column;
+		}
+		endOffset += length;
+	}
+
+	/**
+	 * Evicts the oldest lines, if the store exceeds the given line or character
+	 * limits. To keep eviction rare, an extra tenth of the limit is evicted
+	 * beyond the excess. The last (current) line is never evicted.
+	 *
+	 * @param maxLines Maximum number of lines, or 0 for unlimited.
+	 * @param maxChars Maximum number of characters, or 0 for unlimited.
+	 * @return The number of lines evicted.
+	 */
+	public int trim(final int maxLines, final long maxChars) {
+		return trim(maxLines, maxChars, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Evicts the oldest lines, like {@link #trim(int, long)}, but never the text
+	 * from the given offset onward, even if the store then exceeds its limits.
+	 *
+	 * @param keepFrom Absolute offset of the first character to keep.
+	 * @return The number of lines evicted.
+	 */
+	public synchronized int trim(final int maxLines, final long maxChars,
+		final long keepFrom)
+	{
+		final int lineCount = getLineCount();
+		long evict = 0;
+		if (maxLines > 0 && lineCount > maxLines) {
+			evict = lineCount - maxLines + maxLines / 10;
+		}
+		final long length = length();
+		if (maxChars > 0 && length > maxChars) {
+			// evict through the line containing the last excess character
+			final long excess = length - maxChars + maxChars / 10;
+			evict = Math.max(evict, getLineIndex(startOffset + excess - 1) + 1);
+		}
+		// NB: Lines before the one containing keepFrom end at or before it.
+		final int keep = keepFrom >= endOffset ? lineCount - 1 : //
+			getLineIndex(keepFrom);
+		final int count = (int) Math.min(evict, Math.min(lineCount - 1, keep));
+		if (count > 0) evict(count);
+		return Math.max(count, 0);
+	}
+
+	/** Evicts the given number of lines from the start of the store. */
+	public synchronized void evict(final int count) {
+		if (count <= 0) return;
+		if (count >= getLineCount()) {
+			throw new IllegalArgumentException("Cannot evict " + count +
+				" of " + getLineCount() + " lines");
+		}
+		lineStarts.removeFirst(count);
+		lineRuns.removeFirst(count);
+		firstLineNumber += count;
+
+		// discard style runs which end before the new first line
+		final long firstRun = lineRuns.get(0);
+		final int staleRuns = (int) Math.min(firstRun - firstRunNumber, //
+			runStarts.size());
+		runStarts.removeFirst(staleRuns);
+		runStyles.removeFirst(staleRuns);
+		firstRunNumber += staleRuns;
+
+		startOffset = lineStarts.get(0);
+		discardChars(startOffset);
+	}
+
+	/** Removes all text from the store. */
+	public synchronized void clear() {
+		lineStarts.clear();
+		lineRuns.clear();
+		runStarts.clear();
+		runStyles.clear();
+		lineStarts.add(0);
+		lineRuns.add(0);
+		startOffset = endOffset = 0;
+		firstLineNumber = firstRunNumber = 0;
+		column = maxColumns = 0;
+		clearChars();
+	}
+
+	/** Gets the number of retained lines. Always at least one. */
+	public synchronized int getLineCount() {
+		return lineStarts.size();
+	}
+
+	/**
+	 * Gets the number of lines evicted since the store was last cleared. Adding
+	 * this number to a line index yields an absolute line number.
+	 */
+	public synchronized long getFirstLineNumber() {
+		return firstLineNumber;
+	}
+
+	/** Gets the number of retained characters. */
+	public synchronized long length() {
+		return endOffset - startOffset;
+	}
+
+	/** Gets the absolute offset just past the last character. */
+	public synchronized long getEndOffset() {
+		return endOffset;
+	}
+
+	/** Gets the width of the widest line, in display columns. */
+	public synchronized int getMaxColumns() {
+		return maxColumns;
+	}
+
+	/** Gets the absolute offset of the given line's first character. */
+	public synchronized long getLineStart(final int line) {
+		return lineStarts.get(line);
+	}
+
+	/** Gets the length of the given line, excluding its newline. */
+	public synchronized int getLineLength(final int line) {
+		final long start = lineStarts.get(line);
+		final long end = line + 1 < lineStarts.size() ? //
+			lineStarts.get(line + 1) - 1 : endOffset;
+		return (int) (end - start);
+	}
+
+	/** Gets the index of the line containing the given absolute offset. */
+	public synchronized int getLineIndex(final long offset) {
+		int lo = 0, hi = lineStarts.size() - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if (lineStarts.get(mid) <= offset) lo = mid;
+			else hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * Copies characters from the store.
+	 *
+	 * @param offset Absolute offset of the first character to copy.
+	 * @param length Number of characters to copy.
+	 * @param dest Destination array.
+	 * @param destPos Starting position in the destination array.
+	 */
+	public synchronized void getChars(final long offset, final int length,
+		final char[] dest, final int destPos)
+	{
+		if (offset < startOffset || offset + length > endOffset) {
+			throw new IndexOutOfBoundsException("Range [" + offset + ", " +
+				(offset + length) + ") outside [" + startOffset + ", " + endOffset +
+				")");
+		}
+		readChars(offset, length, dest, destPos);
+	}
+
+	/**
+	 * Writes the text between the given offsets to the given writer, one chunk
+	 * at a time. Text which is evicted before it can be written is skipped; if
+	 * the store is cleared, writing stops.
+	 *
+	 * @param out The writer to which the text is written.
+	 * @param from Absolute offset of the first character to write.
+	 * @param to Absolute offset just past the last character to write.
+	 * @return The absolute offset just past the last character written.
+	 */
+	public long write(final Writer out, final long from, final long to)
+		throws IOException
+	{
+		final char[] buf = new char[(int) Math.min(WRITE_CHUNK, //
+			Math.max(0, to - from))];
+		long offset = from;
+		while (offset < to) {
+			final int length;
+			synchronized (this) {
+				if (endOffset < to) break; // cleared
+				if (offset < startOffset) offset = startOffset; // evicted
+				if (offset >= to) break;
+				length = (int) Math.min(buf.length, to - offset);
+				readChars(offset, length, buf, 0);
+			}
+			out.write(buf, 0, length);
+			offset += length;
+		}
+		return offset;
+	}
+
+	/** Gets the number of retained style runs. */
+	public synchronized int getRunCount() {
+		return runStarts.size();
+	}
+
+	/**
+	 * Gets the index of the style run in effect at the start of the given line,
+	 * or -1 if no text has been appended.
+	 */
+	public synchronized int getLineRun(final int line) {
+		if (runStarts.size() == 0) return -1;
+		return (int) (lineRuns.get(line) - firstRunNumber);
+	}
+
+	/** Gets the absolute offset of the given style run's first character. */
+	public synchronized long getRunStart(final int run) {
+		return runStarts.get(run);
+	}
+
+	/** Gets the style ID of the given style run. */
+	public synchronized int getRunStyle(final int run) {
+		return (int) runStyles.get(run);
+	}
+
+	// -- Internal methods --
+
+	/** Stores the given characters starting at the given absolute offset. */
+	protected abstract void writeChars(long offset, CharSequence text);
+
+	/** Copies stored characters starting at the given absolute offset. */
+	protected abstract void readChars(long offset, int length, char[] dest,
+		int destPos);
+
+	/**
+	 * Notifies the storage that characters before the given absolute offset
+	 * will no longer be read, so their memory may be released.
+	 */
+	protected abstract void discardChars(long offset);
+
+	/** Releases all stored characters. */
+	protected abstract void clearChars();
+
+	// -- Helper methods --
+
+	/** Starts a new style run at the end of the store, if needed. */
+	private void addRun(final int style) {
+		final int runCount = runStarts.size();
+		if (runCount > 0) {
+			if (runStyles.get(runCount - 1) == style) return; // same style
+			if (runStarts.get(runCount - 1) == endOffset) {
+				// previous run is empty; restyle it instead
+				runStyles.set(runCount - 1, style);
+				return;
+			}
+		}
+		runStarts.add(endOffset);
+		runStyles.add(style);
+		// if the current line is still empty, it starts with the new run
+		final int lastLine = lineStarts.size() - 1;
+		if (lineStarts.get(lastLine) == endOffset) {
+			lineRuns.set(lastLine, firstRunNumber + runStarts.size() - 1);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A growable array of longs, with cheap removal from the front. */
+	private static class LongQueue {
+
+		private long[] values = new long[16];
+		private int head;
+		private int size;
+
+		public int size() {
+			return size;
+		}
+
+		public long get(final int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " +
+					size);
+			}
+			return values[head + index];
+		}
+
+		public void set(final int index, final long value) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " +
+					size);
+			}
+			values[head + index] = value;
+		}
+
+		public void add(final long value) {
+			if (head + size == values.length) {
+				if (head > values.length / 2) {
+					// plenty of space at the front; slide everything down
+					System.arraycopy(values, head, values, 0, size);
+				}
+				else values = Arrays.copyOfRange(values, head, 2 * values.length);
+				head = 0;
+			}
+			values[head + size++] = value;
+		}
+
+		public void removeFirst(final int count) {
+			head += count;
+			size -= count;
+			if (size == 0) head = 0;
+		}
+
+		/** Removes all values, releasing the backing array. */
+		public void clear() {
+			values = new long[16];
+			head = size = 0;
+		}
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link LineStore} which keeps its characters off the heap, in rolling
+ * memory-mapped segment files. Only the line and style run index is held in
+ * memory; the text of old lines is paged back in from disk when read.
+ * <p>
+ * At most {@link #MAX_MAPPED} segments are mapped at once: the segment being
+ * written, plus the most recently read ones. Clearing the store simply deletes
+ * its segment files.
+ * </p>
+ */
+class MappedLineStore extends LineStore {
+
+	/** Maximum number of segments mapped into memory at the same time. */
+	private static final int MAX_MAPPED = 8;
+
+	private static final int SEGMENT_BITS = 24;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	/** Directory containing this store's segment files. */
+	private final File directory;
+
+	/** Recently used segment buffers, keyed by absolute segment number. */
+	private final Map<Long, CharBuffer> mapped =
+		new LinkedHashMap<Long, CharBuffer>(16, 0.75f, true)
+		{
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Map.Entry<Long, CharBuffer> eldest)
+			{
+				// NB: Unreferenced buffers are unmapped by the garbage collector.
+				return size() > MAX_MAPPED;
+			}
+		};
+
+	/** Absolute number of the first retained segment. */
+	private long firstSegment;
+
+	/** Absolute number one past the last created segment. */
+	private long endSegment;
+
+	/**
+	 * Creates a store whose segment files are kept in a new subdirectory of the
+	 * given directory.
+	 */
+	public MappedLineStore(final File parent) throws IOException {
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Cannot create directory: " + parent);
+		}
+		directory =
+			Files.createTempDirectory(parent.toPath(), "console-").toFile();
+		directory.deleteOnExit();
+	}
+
+	// -- MappedLineStore methods --
+
+	/** Gets the directory containing this store's segment files. */
+	public File getDirectory() {
+		return directory;
+	}
+
+	// -- Internal methods --
+
+	@Override
+	protected void writeChars(final long offset, final CharSequence text) {
+		final int length = text.length();
+		int done = 0;
+		while (done < length) {
+			final long pos = offset + done;
+			final CharBuffer segment = segment(pos >> SEGMENT_BITS);
+			final int segmentPos = (int) (pos & SEGMENT_MASK);
+			final int count = Math.min(length - done, SEGMENT_SIZE - segmentPos);
+			segment.position(segmentPos);
+			segment.append(text, done, done + count);
+			done += count;
+		}
+	}
+
+	@Override
+	protected void readChars(final long offset, final int length,
+		final char[] dest, final int destPos)
+	{
+		int done = 0;
+		while (done < length) {
+			final long pos = offset + done;
+			final CharBuffer segment = segment(pos >> SEGMENT_BITS);
+			final int segmentPos = (int) (pos & SEGMENT_MASK);
+			final int count = Math.min(length - done, SEGMENT_SIZE - segmentPos);
+			segment.position(segmentPos);
+			segment.get(dest, destPos + done, count);
+			done += count;
+		}
+	}
+
+	@Override
+	protected void discardChars(final long offset) {
+		final long first = offset >> SEGMENT_BITS;
+		while (firstSegment < Math.min(first, endSegment)) {
+			delete(firstSegment++);
+		}
+	}
+
+	@Override
+	protected void clearChars() {
+		while (firstSegment < endSegment) {
+			delete(firstSegment++);
+		}
+		firstSegment = endSegment = 0;
+	}
+
+	// -- Helper methods --
+
+	/** Gets the buffer of the given segment, mapping it if necessary. */
+	private CharBuffer segment(final long number) {
+		CharBuffer buffer = mapped.get(number);
+		if (buffer != null) return buffer;
+		if (number < firstSegment) {
+			throw new IllegalStateException("Segment " + number + " was discarded");
+		}
+		final File file = file(number);
+		// NB: The mapping remains valid after the file is closed.
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			buffer = raf.getChannel().map(MapMode.READ_WRITE, 0,
+				2L * SEGMENT_SIZE).asCharBuffer();
+		}
+		catch (final IOException exc) {
+			throw new RuntimeException(exc);
+		}
+		if (number >= endSegment) {
+			file.deleteOnExit();
+			endSegment = number + 1;
+		}
+		mapped.put(number, buffer);
+		return buffer;
+	}
+
+	/** Unmaps and deletes the given segment. */
+	private void delete(final long number) {
+		mapped.remove(number);
+		final File file = file(number);
+		if (!file.delete()) file.deleteOnExit();
+	}
+
+	private File file(final long number) {
+		return new File(directory, "segment-" + number + ".chars");
+	}
+
+}
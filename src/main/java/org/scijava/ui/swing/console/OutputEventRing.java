@@ -0,0 +1,298 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.awt.EventQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.scijava.console.OutputEvent;
+import org.scijava.ui.swing.console.SwingConsolePane.OverflowPolicy;
+
+/**
+ * A bounded, lock-free queue of {@link OutputEvent}s, written by any number of
+ * threads and drained by the console on the EDT. Each event is queued along
+ * with a timestamp, so that the console can measure how long output waits,
+ * and with the thread which produced it, so that output can be filtered by
+ * thread.
+ * <p>
+ * Each slot of the ring carries a sequence number which tells producers and
+ * consumers whether the slot is free or filled, so that neither side ever
+ * takes a lock; a producer only competes with other producers for a single
+ * compare-and-set. When the ring is full, the {@link OverflowPolicy} decides
+ * what happens to new events.
+ * </p>
+ * <p>
+ * Events from any one thread are always dequeued in the order they were
+ * offered. This holds even while spilling: once any event has spilled, new
+ * events are spilled too, until the consumer has caught up.
+ * </p>
+ */
+class OutputEventRing {
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final OutputEvent[] events;
+	private final long[] stamps;
+	private final Thread[] threads;
+
+	/** Position of the next slot to fill. */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** Position of the next slot to drain. */
+	private final AtomicLong head = new AtomicLong();
+
+	/** Overflow storage for the {@link OverflowPolicy#SPILL} policy. */
+	private final ConcurrentLinkedQueue<Spilled> spill =
+		new ConcurrentLinkedQueue<>();
+	private final AtomicInteger spillSize = new AtomicInteger();
+
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder blocked = new LongAdder();
+	private final LongAdder spilled = new LongAdder();
+
+	private volatile OverflowPolicy policy;
+
+	/**
+	 * Creates a ring with room for the given number of events, rounded up to a
+	 * power of two.
+	 */
+	public OutputEventRing(final int capacity, final OverflowPolicy policy) {
+		final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = size - 1;
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		events = new OutputEvent[size];
+		stamps = new long[size];
+		threads = new Thread[size];
+		this.policy = policy;
+	}
+
+	// -- OutputEventRing methods --
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	public void setPolicy(final OverflowPolicy policy) {
+		this.policy = policy;
+	}
+
+	/** Gets the number of slots in the ring. */
+	public int capacity() {
+		return events.length;
+	}
+
+	/** Gets the approximate number of queued events, including spilled ones. */
+	public int size() {
+		final long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, capacity())) + spillSize.get();
+	}
+
+	/** Gets the number of events discarded because the ring was full. */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/** Gets the number of offers which had to wait for space in the ring. */
+	public long getBlockedCount() {
+		return blocked.sum();
+	}
+
+	/** Gets the number of events stored outside the ring because it was full. */
+	public long getSpilledCount() {
+		return spilled.sum();
+	}
+
+	/**
+	 * Adds an event to the queue, applying the overflow policy if the ring is
+	 * full.
+	 *
+	 * @param event The event to queue.
+	 * @param stamp The time the event occurred, per {@link System#nanoTime()}.
+	 * @return True if the event was queued; false if it was dropped.
+	 */
+	public boolean offer(final OutputEvent event, final long stamp) {
+		if (spillSize.get() > 0) {
+			// NB: Keep spilling until the consumer catches up, to preserve order.
+			spill(event, stamp);
+			return true;
+		}
+		if (tryOffer(event, stamp)) return true;
+
+		// the ring is full
+		final OverflowPolicy policy = this.policy;
+		// NB: Never block the EDT, which is the thread that drains the ring.
+		if (policy == OverflowPolicy.BLOCK && !EventQueue.isDispatchThread()) {
+			return await(event, stamp);
+		}
+		switch (policy) {
+			case DROP_NEWEST:
+				dropped.increment();
+				return false;
+			case DROP_OLDEST:
+				do {
+					if (poll(null) != null) dropped.increment();
+				}
+				while (!tryOffer(event, stamp));
+				return true;
+			case BLOCK:
+			case SPILL:
+			default:
+				spill(event, stamp);
+				return true;
+		}
+	}
+
+	/**
+	 * Removes the oldest queued event, or returns null if there is none.
+	 *
+	 * @param stamp If non-null, receives the event's timestamp in its first
+	 *          element.
+	 */
+	public OutputEvent poll(final long[] stamp) {
+		return poll(stamp, null);
+	}
+
+	/**
+	 * Removes the oldest queued event, or returns null if there is none.
+	 *
+	 * @param stamp If non-null, receives the event's timestamp in its first
+	 *          element.
+	 * @param thread If non-null, receives the thread which offered the event in
+	 *          its first element.
+	 */
+	public OutputEvent poll(final long[] stamp, final Thread[] thread) {
+		long pos = head.get();
+		while (true) {
+			final int index = (int) pos & mask;
+			final long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0) {
+				// slot is filled; try to claim it
+				if (head.compareAndSet(pos, pos + 1)) {
+					final OutputEvent event = events[index];
+					if (stamp != null) stamp[0] = stamps[index];
+					if (thread != null) thread[0] = threads[index];
+					events[index] = null;
+					threads[index] = null;
+					sequences.set(index, pos + mask + 1);
+					return event;
+				}
+				pos = head.get();
+			}
+			else if (diff < 0) break; // ring is empty
+			else pos = head.get(); // another consumer got there first
+		}
+		final Spilled spilledEvent = spill.poll();
+		if (spilledEvent == null) return null;
+		spillSize.decrementAndGet();
+		if (stamp != null) stamp[0] = spilledEvent.stamp;
+		if (thread != null) thread[0] = spilledEvent.thread;
+		return spilledEvent.event;
+	}
+
+	/** Discards all queued events. */
+	public void clear() {
+		while (poll(null) != null) {
+			// NB: Just keep polling.
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Adds the event to the ring if there is space, without blocking. */
+	private boolean tryOffer(final OutputEvent event, final long stamp) {
+		long pos = tail.get();
+		while (true) {
+			final int index = (int) pos & mask;
+			final long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				// slot is free; try to claim it
+				if (tail.compareAndSet(pos, pos + 1)) {
+					events[index] = event;
+					stamps[index] = stamp;
+					threads[index] = Thread.currentThread();
+					sequences.set(index, pos + 1);
+					return true;
+				}
+				pos = tail.get();
+			}
+			else if (diff < 0) return false; // ring is full
+			else pos = tail.get(); // another producer got there first
+		}
+	}
+
+	/** Waits until there is space in the ring for the given event. */
+	private boolean await(final OutputEvent event, final long stamp) {
+		blocked.increment();
+		int spins = 0;
+		while (!tryOffer(event, stamp)) {
+			if (Thread.currentThread().isInterrupted()) {
+				dropped.increment();
+				return false;
+			}
+			if (spins++ < 100) Thread.yield();
+			else LockSupport.parkNanos(100000);
+		}
+		return true;
+	}
+
+	private void spill(final OutputEvent event, final long stamp) {
+		spillSize.incrementAndGet();
+		spill.add(new Spilled(event, stamp, Thread.currentThread()));
+		spilled.increment();
+	}
+
+	// -- Helper classes --
+
+	/** An event which did not fit into the ring, with its stamp and thread. */
+	private static class Spilled {
+
+		private final OutputEvent event;
+		private final long stamp;
+		private final Thread thread;
+
+		public Spilled(final OutputEvent event, final long stamp,
+			final Thread thread)
+		{
+			this.event = event;
+			this.stamp = stamp;
+			this.thread = thread;
+		}
+	}
+
+}
@@ -31,25 +31,44 @@
 package org.scijava.ui.swing.console;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Style;
-import javax.swing.text.StyleConstants;
-import javax.swing.text.StyledDocument;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
 
 import net.miginfocom.swing.MigLayout;
 
 import org.scijava.Context;
 import org.scijava.console.OutputEvent;
-import org.scijava.console.OutputEvent.Source;
+import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 import org.scijava.thread.ThreadService;
 import org.scijava.ui.console.AbstractConsolePane;
@@ -58,23 +77,235 @@ import org.scijava.ui.swing.StaticSwingUtils;
 
 /**
  * Swing implementation of {@link ConsolePane}.
+ * <p>
+ * Output is not written to the display one event at a time. Instead, events
+ * are collected into a bounded, lock-free queue, whose behavior when full is
+ * governed by its {@link #setOverflowPolicy overflow policy}, and drained on
+ * the EDT at most once
+ * per {@link #getMaxBatchLatency() batch latency} period; adjacent events with
+ * the same style are merged into a single insertion, followed by a single
+ * scroll update.
+ * </p>
+ * <p>
+ * The scrollback can be bounded by a {@link #setMaxLines maximum line count}
+ * and a {@link #setMaxChars maximum character count}. When either limit is
+ * exceeded, the oldest lines are evicted in chunks of roughly a tenth of the
+ * limit, so that eviction happens rarely rather than on every insertion.
+ * </p>
+ * <p>
+ * By default, the text is shown in a {@link JTextPane}. For very large
+ * amounts of output, a {@link #setVirtual virtualized} view can be used
+ * instead, which only measures and paints the visible lines. For long runs
+ * whose complete output must be kept, a {@link #setHistoryDirectory history
+ * directory} can be given, in which case the text is kept off the heap, in
+ * memory-mapped files.
+ * </p>
+ * <p>
+ * Throughput and latency {@link #getMetrics() metrics} are collected
+ * continuously, and can be shown in an optional
+ * {@link #setMetricsVisible status line} beneath the output.
+ * </p>
+ * <p>
+ * ANSI escape sequences in the output are removed, and their color and text
+ * attribute codes are applied to the text; sequences may span several output
+ * events.
+ * </p>
+ * <p>
+ * The output can be searched with a {@link #showFindBar() find bar}, which
+ * searches in the background and highlights only the visible matches.
+ * </p>
+ * <p>
+ * The output can be {@link #save saved} to a file, or continuously
+ * {@link #startTee copied} to one as it arrives; either way, the text is
+ * streamed from the console's storage in chunks.
+ * </p>
+ * <p>
+ * Any number of {@link #addFilteredView filtered views} can be attached to
+ * the console, each showing only the output which meets its
+ * {@link ConsoleFilter}'s criteria.
+ * </p>
+ * <p>
+ * The Swing components which display the output are only built once they are
+ * first needed: when the console is {@link #show() shown}, when the
+ * {@link #getComponent() component} becomes visible, or when one of them is
+ * requested directly. Until then, output is queued in the same way, but is
+ * drained by a background task straight into a compact, bounded buffer,
+ * without involving the EDT, and is loaded into the display in a single pass
+ * when it is built.
+ * </p>
  *
  * @author Curtis Rueden
  */
 public class SwingConsolePane extends AbstractConsolePane<JPanel> {
 
+	/**
+	 * Default maximum time (in milliseconds) which output may wait in the buffer
+	 * before being written to the console. Roughly one frame at 60 Hz.
+	 */
+	public static final int DEFAULT_MAX_BATCH_LATENCY = 16;
+
+	/** System property specifying the default maximum number of lines. */
+	public static final String MAX_LINES_PROPERTY = "scijava.console.maxLines";
+
+	/** System property specifying the default maximum number of characters. */
+	public static final String MAX_CHARS_PROPERTY = "scijava.console.maxChars";
+
+	/** System property specifying whether to use the virtualized view. */
+	public static final String VIRTUAL_PROPERTY = "scijava.console.virtual";
+
+	/**
+	 * System property specifying a directory in which to keep the console's
+	 * complete history.
+	 */
+	public static final String HISTORY_DIR_PROPERTY = "scijava.console.historyDir";
+
+	/**
+	 * System property specifying the size in bytes beyond which a
+	 * {@link #startTee tee file} is rotated.
+	 */
+	public static final String TEE_MAX_BYTES_PROPERTY =
+		"scijava.console.tee.maxBytes";
+
+	/** System property specifying how many rotated tee files to keep. */
+	public static final String TEE_MAX_FILES_PROPERTY =
+		"scijava.console.tee.maxFiles";
+
+	/** System property specifying whether to show the metrics status line. */
+	public static final String METRICS_PROPERTY = "scijava.console.metrics";
+
+	/** Number of events which fit into the output queue before it overflows. */
+	public static final int QUEUE_CAPACITY = 8192;
+
+	/** Maximum number of events written to the display by a single drain. */
+	private static final int MAX_BATCH_EVENTS = 10000;
+
+	/**
+	 * Maximum number of characters buffered before the display is built, unless
+	 * the {@link #setMaxChars character limit} is lower.
+	 */
+	private static final int MAX_DEFERRED_CHARS = 1 << 20;
+
 	@Parameter
 	private ThreadService threadService;
 
+	@Parameter
+	private LogService log;
+
 	private JPanel consolePanel;
-	private JTextPane textPane;
 	private JScrollPane scrollPane;
+	private JLabel droppedLabel;
+	private JLabel metricsLabel;
+	private ConsoleFindBar findBar;
+
+	/** The text styles, addressed by ID. */
+	private final ConsoleStyles styles = new ConsoleStyles();
+
+	/** Parsers for ANSI escape sequences in standard output and error. */
+	private final AnsiParser[] parsers = { new AnsiParser(styles),
+		new AnsiParser(styles) };
+
+	/** The console's text, in line-indexed form; created on first output. */
+	private LineStore store;
+
+	/**
+	 * The component which displays the {@link #store}'s text, or null if the
+	 * display has not been built yet.
+	 */
+	private volatile ConsoleRenderer renderer;
+
+	private boolean virtual = Boolean.getBoolean(VIRTUAL_PROPERTY);
+
+	private File historyDirectory = historyDirectoryProperty();
+
+	/** Output events which have not yet been written to the store. */
+	private final OutputEventRing pending =
+		new OutputEventRing(QUEUE_CAPACITY, OverflowPolicy.SPILL);
+
+	private final ConsoleMetrics metrics = new ConsoleMetrics(pending);
+
+	/** Whether a drain of the {@link #pending} events is already scheduled. */
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+	/** Timer which drains the pending events on the EDT. */
+	private final Timer drainTimer;
 
-	private StyledDocument doc;
-	private Style stdoutLocal;
-	private Style stderrLocal;
-	private Style stdoutGlobal;
-	private Style stderrGlobal;
+	/** Buffer used to merge adjacent same-style output; used on the EDT only. */
+	private final StringBuilder batch = new StringBuilder();
+
+	/** Style of the text in the {@link #batch}; used on the EDT only. */
+	private int batchStyle;
+
+	/**
+	 * Whether each filtered view accepts the event being written; used on the
+	 * EDT only.
+	 */
+	private boolean[] viewAccepts = new boolean[0];
+
+	/** Merges parsed output into the {@link #batch}; used on the EDT only. */
+	private final AnsiParser.Sink batchSink = new AnsiParser.Sink() {
+
+		@Override
+		public void text(final CharSequence text, final int start, final int end,
+			final int style)
+		{
+			if (style != batchStyle) {
+				// style changed; write out the previous run
+				write(batch, batchStyle);
+				batchStyle = style;
+			}
+			batch.append(text, start, end);
+			for (int v = 0; v < views.size(); v++) {
+				if (viewAccepts[v]) views.get(v).append(text, start, end, style);
+			}
+		}
+	};
+
+	/** Buffer for output written before the display is built. */
+	private final StringBuilder deferredText = new StringBuilder();
+
+	/** Writes parsed output to the store, before the display is built. */
+	private final AnsiParser.Sink deferredSink = new AnsiParser.Sink() {
+
+		@Override
+		public void text(final CharSequence text, final int start, final int end,
+			final int style)
+		{
+			deferredText.append(text, start, end);
+			store.append(deferredText, style);
+			deferredText.setLength(0);
+		}
+	};
+
+	/** Timestamps of the events in the current batch; used on the EDT only. */
+	private final long[] batchStamps = new long[MAX_BATCH_EVENTS];
+
+	/** Receives the timestamp of each polled event; used on the EDT only. */
+	private final long[] stamp = new long[1];
+
+	/** Receives the thread of each polled event; used on the EDT only. */
+	private final Thread[] thread = new Thread[1];
+
+	/** The file to which output is copied as it arrives, or null if none. */
+	private volatile ConsoleTee tee;
+
+	/** A stopped tee which is still writing out the remaining text, or null. */
+	private volatile ConsoleTee closingTee;
+
+	/** The attached filtered views; used on the EDT only. */
+	private final List<FilteredConsoleView> views = new ArrayList<>();
+
+	/** Timer which refreshes the metrics status line. */
+	private final Timer metricsTimer;
+
+	private boolean metricsVisible = Boolean.getBoolean(METRICS_PROPERTY);
+
+	private volatile int maxBatchLatency = DEFAULT_MAX_BATCH_LATENCY;
+
+	private int maxLines = Integer.getInteger(MAX_LINES_PROPERTY, 0);
+	private int maxChars = Integer.getInteger(MAX_CHARS_PROPERTY, 0);
+
+	/** Number of lines evicted from the scrollback since the last clear. */
+	private long droppedLines;
 
 	/**
 	 * The console pane's containing window; e.g., a {@link javax.swing.JFrame} or
@@ -84,6 +315,21 @@ public class SwingConsolePane extends AbstractConsolePane<JPanel> {
 
 	public SwingConsolePane(final Context context) {
 		super(context);
+		drainTimer = new Timer(maxBatchLatency, new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				drain();
+			}
+		});
+		drainTimer.setRepeats(false);
+		metricsTimer = new Timer(1000, new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				updateMetricsLabel();
+			}
+		});
 	}
 
 	// -- SwingConsolePane methods --
@@ -93,43 +339,436 @@ public class SwingConsolePane extends AbstractConsolePane<JPanel> {
 		this.window = window;
 	}
 
+	/**
+	 * Gets the text pane which displays the console's output, or null if the
+	 * console uses the {@link #isVirtual() virtualized} view.
+	 */
 	public JTextPane getTextPane() {
-		if (consolePanel == null) initConsolePanel();
-		return textPane;
+		if (renderer == null) initConsolePanel();
+		if (!(renderer instanceof TextPaneRenderer)) return null;
+		return ((TextPaneRenderer) renderer).getTextPane();
 	}
 
 	public JScrollPane getScrollPane() {
-		if (consolePanel == null) initConsolePanel();
+		if (renderer == null) initConsolePanel();
 		return scrollPane;
 	}
 
 	public void clear() {
-		if (consolePanel == null) initConsolePanel();
-		textPane.setText("");
+		if (renderer == null && clearDeferred()) return;
+		pending.clear();
+		store.clear();
+		renderer.clear();
+		for (final FilteredConsoleView view : views) {
+			view.clear();
+		}
+		droppedLines = 0;
+		updateDroppedLabel();
+		findBar.cleared();
+		if (tee != null) tee.cleared();
 	}
 
-	// -- ConsolePane methods --
+	/**
+	 * Gets whether the console uses the virtualized view, which only lays out
+	 * and paints the visible lines, instead of a {@link JTextPane}.
+	 */
+	public boolean isVirtual() {
+		return virtual || historyDirectory != null;
+	}
 
-	@Override
-	public void append(final OutputEvent event) {
-		if (consolePanel == null) initConsolePanel();
-		threadService.queue(new Runnable() {
+	/**
+	 * Sets whether the console uses the virtualized view, which only lays out
+	 * and paints the visible lines, instead of a {@link JTextPane}. The default
+	 * is given by the {@link #VIRTUAL_PROPERTY} system property.
+	 *
+	 * @throws IllegalStateException if the console's display has already been
+	 *           built.
+	 */
+	public void setVirtual(final boolean virtual) {
+		if (renderer != null) {
+			throw new IllegalStateException("Console is already initialized");
+		}
+		this.virtual = virtual;
+	}
+
+	/**
+	 * Gets the directory in which the console keeps its complete history, or
+	 * null if the history is kept in memory.
+	 */
+	public File getHistoryDirectory() {
+		return historyDirectory;
+	}
+
+	/**
+	 * Sets a directory in which the console keeps its complete history. The
+	 * text is written to rolling memory-mapped segment files in a new
+	 * subdirectory, and only an index of line offsets is kept in memory. When a
+	 * history directory is set, the console always uses the
+	 * {@link #isVirtual() virtualized} view, and the scrollback limits do not
+	 * apply. The default is given by the {@link #HISTORY_DIR_PROPERTY} system
+	 * property.
+	 *
+	 * @param directory The directory in which to keep the history, or null to
+	 *          keep the history in memory.
+	 * @throws IllegalStateException if the console has already received
+	 *           output.
+	 */
+	public synchronized void setHistoryDirectory(final File directory) {
+		if (store != null) {
+			throw new IllegalStateException("Console already has output");
+		}
+		this.historyDirectory = directory;
+	}
+
+	/**
+	 * Attaches a view which shows only the output meeting the given filter's
+	 * criteria. The view starts with the matching part of the console's current
+	 * text, and is then kept up to date as output arrives. This method must be
+	 * called on the EDT.
+	 */
+	public FilteredConsoleView addFilteredView(final ConsoleFilter filter) {
+		if (renderer == null) initConsolePanel();
+		final FilteredConsoleView view = new FilteredConsoleView(filter, styles);
+		view.load(store);
+		view.flush(maxLines, maxChars);
+		views.add(view);
+		return view;
+	}
+
+	/**
+	 * Detaches the given filtered view, which then no longer receives output.
+	 * This method must be called on the EDT.
+	 */
+	public void removeFilteredView(final FilteredConsoleView view) {
+		views.remove(view);
+	}
+
+	/** Gets the attached filtered views. */
+	public List<FilteredConsoleView> getFilteredViews() {
+		return Collections.unmodifiableList(views);
+	}
+
+	/**
+	 * Asks the user for filter criteria, then shows a filtered view with those
+	 * criteria in a new window, which detaches the view when closed. This method
+	 * must be called on the EDT.
+	 */
+	public void showFilteredView() {
+		final ConsoleFilter filter = ConsoleFilterPrompt.prompt(window);
+		if (filter == null) return; // canceled
+		final FilteredConsoleView view = addFilteredView(filter);
+		final JFrame frame = new JFrame("Console - " + filter);
+		frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+		frame.setContentPane(view.getComponent());
+		frame.addWindowListener(new WindowAdapter() {
+
+			@Override
+			public void windowClosed(final WindowEvent e) {
+				removeFilteredView(view);
+			}
+		});
+		frame.setSize(600, 400);
+		frame.setLocationRelativeTo(window);
+		frame.setVisible(true);
+	}
+
+	/**
+	 * Shows the find bar beneath the output, and focuses its query field. This
+	 * method must be called on the EDT.
+	 */
+	public void showFindBar() {
+		if (renderer == null) initConsolePanel();
+		findBar.open();
+	}
+
+	/**
+	 * Shows the find bar, and searches the output for the given text. Matches
+	 * are found in the background; this method must be called on the EDT.
+	 */
+	public void find(final String query) {
+		showFindBar();
+		findBar.setQuery(query);
+	}
+
+	/**
+	 * Writes the console's text to the given file, as UTF-8, compressed if the
+	 * file name ends in {@code .gz}. The text is streamed from the console's
+	 * storage in chunks, so this method can be called from any thread, and
+	 * output keeps arriving meanwhile.
+	 */
+	public void save(final File file) throws IOException {
+		final LineStore lines = store();
+		final long start, end;
+		synchronized (lines) {
+			start = lines.getLineStart(0);
+			end = lines.getEndOffset();
+		}
+		try (final Writer out = ConsoleTee.writer(file)) {
+			lines.write(out, start, end);
+		}
+	}
+
+	/**
+	 * Starts copying the console's text to the given file: first the text it
+	 * already contains, then all output as it arrives. The file is written in
+	 * the background, as UTF-8, compressed if its name ends in {@code .gz}.
+	 * Any previous tee is stopped.
+	 *
+	 * @param file The file to which the text is copied.
+	 * @param maxBytes Size in bytes beyond which the file is rotated, or 0 to
+	 *          never rotate.
+	 * @param maxFiles Number of rotated files to keep.
+	 */
+	public void startTee(final File file, final long maxBytes,
+		final int maxFiles) throws IOException
+	{
+		stopTee();
+		tee = new ConsoleTee(store(), file, maxBytes, maxFiles, threadService,
+			log);
+	}
+
+	/** Stops copying output to the tee file, if any. */
+	public void stopTee() {
+		final ConsoleTee oldTee = tee;
+		if (oldTee == null) return;
+		tee = null;
+		closingTee = oldTee;
+		oldTee.close();
+	}
+
+	/** Gets the file to which output is being copied, or null if none. */
+	public File getTeeFile() {
+		final ConsoleTee currentTee = tee;
+		return currentTee == null ? null : currentTee.getFile();
+	}
+
+	/**
+	 * Asks the user for a file, then saves the console's text to it in the
+	 * background. This method must be called on the EDT.
+	 */
+	public void showSaveDialog() {
+		final File file = chooseFile("Save Console");
+		if (file == null) return; // canceled
+		threadService.run(new Runnable() {
 
 			@Override
 			public void run() {
-				final boolean atBottom =
-					StaticSwingUtils.isScrolledToBottom(scrollPane);
 				try {
-					doc.insertString(doc.getLength(), event.getOutput(), getStyle(event));
+					save(file);
 				}
-				catch (final BadLocationException exc) {
-					throw new RuntimeException(exc);
+				catch (final IOException exc) {
+					log.error("Cannot save console to " + file, exc);
 				}
-				if (atBottom) StaticSwingUtils.scrollToBottom(scrollPane);
 			}
 		});
 	}
 
+	/**
+	 * Asks the user for a file, then starts copying output to it, rotating it
+	 * per the {@link #TEE_MAX_BYTES_PROPERTY} and {@link #TEE_MAX_FILES_PROPERTY}
+	 * system properties. This method must be called on the EDT.
+	 *
+	 * @return True if copying started; false if canceled or failed.
+	 */
+	public boolean showTeeDialog() {
+		final File file = chooseFile("Tee Console to File");
+		if (file == null) return false; // canceled
+		try {
+			startTee(file, Long.getLong(TEE_MAX_BYTES_PROPERTY, 0), //
+				Integer.getInteger(TEE_MAX_FILES_PROPERTY, 5));
+			return true;
+		}
+		catch (final IOException exc) {
+			log.error("Cannot copy console to " + file, exc);
+			return false;
+		}
+	}
+
+	/** Gets the console's throughput and latency measurements. */
+	public ConsoleMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Gets whether the metrics status line is shown. */
+	public boolean isMetricsVisible() {
+		return metricsVisible;
+	}
+
+	/**
+	 * Sets whether the metrics status line is shown beneath the output. The
+	 * default is given by the {@link #METRICS_PROPERTY} system property. Once
+	 * the console's display has been built, this method must be called on the
+	 * EDT.
+	 */
+	public void setMetricsVisible(final boolean visible) {
+		metricsVisible = visible;
+		if (metricsLabel == null) return; // applied on initialization
+		metricsLabel.setVisible(visible);
+		if (visible) {
+			updateMetricsLabel();
+			metricsTimer.start();
+		}
+		else metricsTimer.stop();
+	}
+
+	/** Gets what happens to output when the output queue is full. */
+	public OverflowPolicy getOverflowPolicy() {
+		return pending.getPolicy();
+	}
+
+	/**
+	 * Sets what happens to output when the output queue is full. The default is
+	 * {@link OverflowPolicy#SPILL}.
+	 */
+	public void setOverflowPolicy(final OverflowPolicy policy) {
+		if (policy == null) throw new NullPointerException("Null policy");
+		pending.setPolicy(policy);
+	}
+
+	/**
+	 * Gets the number of output events discarded because the output queue was
+	 * full.
+	 */
+	public long getDroppedEventCount() {
+		return pending.getDroppedCount();
+	}
+
+	/**
+	 * Gets the number of output events whose producer had to wait because the
+	 * output queue was full.
+	 */
+	public long getBlockedEventCount() {
+		return pending.getBlockedCount();
+	}
+
+	/**
+	 * Gets the number of output events which overflowed from the output queue
+	 * into unbounded spill storage.
+	 */
+	public long getSpilledEventCount() {
+		return pending.getSpilledCount();
+	}
+
+	/**
+	 * Gets the maximum time (in milliseconds) which output may be buffered
+	 * before it is written to the console.
+	 */
+	public int getMaxBatchLatency() {
+		return maxBatchLatency;
+	}
+
+	/**
+	 * Sets the maximum time (in milliseconds) which output may be buffered
+	 * before it is written to the console. Larger values coalesce more output
+	 * into each display update, at the expense of responsiveness. A value of
+	 * zero writes pending output at the next opportunity on the EDT.
+	 */
+	public void setMaxBatchLatency(final int maxBatchLatency) {
+		if (maxBatchLatency < 0) {
+			throw new IllegalArgumentException("Negative latency: " +
+				maxBatchLatency);
+		}
+		this.maxBatchLatency = maxBatchLatency;
+	}
+
+	/**
+	 * Gets the maximum number of lines kept in the scrollback, or 0 if
+	 * unlimited.
+	 */
+	public int getMaxLines() {
+		return maxLines;
+	}
+
+	/**
+	 * Sets the maximum number of lines kept in the scrollback. A value of 0
+	 * means unlimited. The limit is enforced when output is next written.
+	 */
+	public void setMaxLines(final int maxLines) {
+		if (maxLines < 0) {
+			throw new IllegalArgumentException("Negative line limit: " + maxLines);
+		}
+		this.maxLines = maxLines;
+	}
+
+	/**
+	 * Gets the maximum number of characters kept in the scrollback, or 0 if
+	 * unlimited.
+	 */
+	public int getMaxChars() {
+		return maxChars;
+	}
+
+	/**
+	 * Sets the maximum number of characters kept in the scrollback. A value of 0
+	 * means unlimited. The limit is enforced when output is next written.
+	 */
+	public void setMaxChars(final int maxChars) {
+		if (maxChars < 0) {
+			throw new IllegalArgumentException("Negative character limit: " +
+				maxChars);
+		}
+		this.maxChars = maxChars;
+	}
+
+	/** Gets the number of lines evicted from the scrollback since last cleared. */
+	public long getDroppedLineCount() {
+		return droppedLines;
+	}
+
+	/**
+	 * Immediately writes all pending output to the console. This method must be
+	 * called on the EDT.
+	 */
+	public void flush() {
+		if (renderer == null && flushDeferred()) return;
+		OutputEvent event = pending.poll(stamp, thread);
+		if (event == null) return; // nothing to do
+
+		final long start = System.nanoTime();
+		final boolean atBottom = StaticSwingUtils.isScrolledToBottom(scrollPane);
+		if (viewAccepts.length < views.size()) {
+			viewAccepts = new boolean[views.size()];
+		}
+		int count = 0;
+		while (event != null) {
+			for (int v = 0; v < views.size(); v++) {
+				viewAccepts[v] = views.get(v).accepts(event, thread[0]);
+			}
+			parser(event).parse(event.getOutput(), ConsoleStyles.id(event),
+				batchSink);
+			batchStamps[count] = stamp[0];
+			if (++count >= MAX_BATCH_EVENTS) break;
+			event = pending.poll(stamp, thread);
+		}
+		thread[0] = null;
+		write(batch, batchStyle);
+		if (tee != null) tee.outputAppended();
+		trimScrollback();
+		findBar.outputAppended();
+		for (int v = 0; v < views.size(); v++) {
+			views.get(v).flush(maxLines, maxChars);
+		}
+
+		final long end = System.nanoTime();
+		metrics.getInsertTime().record(end - start);
+		for (int i = 0; i < count; i++) {
+			metrics.getLatency().record(end - batchStamps[i]);
+		}
+
+		if (atBottom) renderer.scrollToBottom(scrollPane);
+
+		// NB: Avoid monopolizing the EDT; leave any remainder for the next drain.
+		if (pending.size() > 0) scheduleDrain();
+	}
+
+	// -- ConsolePane methods --
+
+	@Override
+	public void append(final OutputEvent event) {
+		metrics.appended(event.getOutput().length());
+		if (pending.offer(event, System.nanoTime())) scheduleDrain();
+	}
+
 	@Override
 	public void show() {
 		if (window == null || window.isVisible()) return;
@@ -137,6 +776,7 @@ public class SwingConsolePane extends AbstractConsolePane<JPanel> {
 
 			@Override
 			public void run() {
+				initConsolePanel();
 				window.setVisible(true);
 			}
 		});
@@ -145,8 +785,8 @@ public class SwingConsolePane extends AbstractConsolePane<JPanel> {
 	// -- UIComponent methods --
 
 	@Override
-	public JPanel getComponent() {
-		if (consolePanel == null) initConsolePanel();
+	public synchronized JPanel getComponent() {
+		if (consolePanel == null) initShell();
 		return consolePanel;
 	}
 
@@ -157,33 +797,46 @@ public class SwingConsolePane extends AbstractConsolePane<JPanel> {
 
 	// -- Helper methods - lazy initialization --
 
-	private synchronized void initConsolePanel() {
-		if (consolePanel != null) return;
+	/**
+	 * Creates the (empty) component which will hold the display, and which
+	 * builds it when first shown.
+	 */
+	private void initShell() {
+		final JPanel shell = new JPanel();
+		shell.setLayout(new BorderLayout());
+		// NB: Reserve the display's size, so that containing windows pack well.
+		shell.setPreferredSize(new Dimension(600, 600));
+		shell.addHierarchyListener(new HierarchyListener() {
 
-		final JPanel panel = new JPanel();
-		panel.setLayout(new MigLayout("", "[grow,fill]", "[grow,fill,align top]"));
+			@Override
+			public void hierarchyChanged(final HierarchyEvent e) {
+				final long flags = e.getChangeFlags();
+				if ((flags & HierarchyEvent.SHOWING_CHANGED) == 0) return;
+				if (!shell.isShowing()) return;
+				shell.removeHierarchyListener(this);
+				initConsolePanel();
+			}
+		});
+		consolePanel = shell;
+	}
 
-		textPane = new JTextPane();
-		textPane.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
-		textPane.setEditable(false);
+	private synchronized void initConsolePanel() {
+		if (renderer != null) return;
 
-		doc = textPane.getStyledDocument();
+		final JPanel panel = new JPanel();
+		panel.setLayout(new MigLayout("hidemode 3", "[grow,fill]",
+			"[][grow,fill,align top][][]"));
 
-		stdoutLocal = createStyle("stdoutLocal", null, Color.black, null, null);
-		stderrLocal = createStyle("stderrLocal", null, Color.red, null, null);
-		stdoutGlobal = createStyle("stdoutGlobal", stdoutLocal, null, null, true);
-		stderrGlobal = createStyle("stderrGlobal", stderrLocal, null, null, true);
+		droppedLabel = new JLabel();
+		droppedLabel.setVisible(false);
+		panel.add(droppedLabel, "wrap");
 
-		// NB: We wrap the JTextPane in a JPanel to disable
-		// the text pane's intelligent line wrapping behavior.
-		// I.e.: we want console lines _not_ to wrap, but instead
-		// for the scroll pane to show a horizontal scroll bar.
-		// Thanks to: https://tips4java.wordpress.com/2009/01/25/no-wrap-text-pane/
-		final JPanel textPanel = new JPanel();
-		textPanel.setLayout(new BorderLayout());
-		textPanel.add(textPane);
+		final LineStore lines = store();
+		final ConsoleRenderer view = isVirtual() ? //
+			new ConsoleLineView(lines, styles) : new TextPaneRenderer(styles);
+		view.load(lines);
 
-		scrollPane = new JScrollPane(textPanel);
+		scrollPane = new JScrollPane(view.getView());
 		scrollPane.setPreferredSize(new Dimension(600, 600));
 
 		// Make the scroll bars move at a reasonable pace.
@@ -193,28 +846,248 @@ public class SwingConsolePane extends AbstractConsolePane<JPanel> {
 		scrollPane.getHorizontalScrollBar().setUnitIncrement(charWidth);
 		scrollPane.getVerticalScrollBar().setUnitIncrement(2 * lineHeight);
 
-		panel.add(scrollPane);
+		panel.add(scrollPane, "wrap");
+
+		findBar = new ConsoleFindBar(lines, view, threadService);
+		findBar.setVisible(false);
+		panel.add(findBar, "wrap");
+		final int shortcutMask = GraphicsEnvironment.isHeadless() ? //
+			InputEvent.CTRL_MASK : Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+		panel.getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(
+			KeyStroke.getKeyStroke(KeyEvent.VK_F, shortcutMask), "find");
+		panel.getActionMap().put("find", new AbstractAction() {
 
-		consolePanel = panel;
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				showFindBar();
+			}
+		});
+
+		metricsLabel = new JLabel();
+		metricsLabel.setVisible(false);
+		panel.add(metricsLabel);
+
+		final JPanel shell = getComponent();
+		shell.setPreferredSize(null);
+		shell.add(panel);
+		shell.revalidate();
+
+		// NB: From now on, output is queued for the display, not buffered.
+		renderer = view;
+		updateDroppedLabel();
+		if (metricsVisible) setMetricsVisible(true);
+		view.scrollToBottom(scrollPane);
+	}
+
+	/**
+	 * Writes pending output straight to the store, if the display has not been
+	 * built yet. Called by the background drain task, or by {@link #flush()}.
+	 *
+	 * @return false if the display exists, and the output must be written to
+	 *         it on the EDT.
+	 */
+	private synchronized boolean flushDeferred() {
+		if (renderer != null) return false;
+		final LineStore lines = store();
+		OutputEvent event = pending.poll(null);
+		if (event == null) return true; // nothing to do
+		int count = 0;
+		while (event != null) {
+			parser(event).parse(event.getOutput(), ConsoleStyles.id(event),
+				deferredSink);
+			if (++count >= MAX_BATCH_EVENTS) break;
+			event = pending.poll(null);
+		}
+		if (tee != null) tee.outputAppended();
+		if (historyDirectory == null) {
+			final int limit = maxChars > 0 ? Math.min(maxChars, MAX_DEFERRED_CHARS)
+				: MAX_DEFERRED_CHARS;
+			droppedLines += lines.trim(maxLines, limit, teeOffset());
+		}
+		return true;
+	}
+
+	/**
+	 * Discards the buffered output, if the display has not been built yet.
+	 *
+	 * @return false if the display exists, and must be cleared too.
+	 */
+	private synchronized boolean clearDeferred() {
+		if (renderer != null) return false;
+		pending.clear();
+		if (store != null) store.clear();
+		if (tee != null) tee.cleared();
+		droppedLines = 0;
+		return true;
 	}
 
 	// -- Helper methods --
 
-	private Style createStyle(final String name, final Style parent,
-		final Color foreground, final Boolean bold, final Boolean italic)
-	{
-		final Style style = textPane.addStyle(name, parent);
-		if (foreground != null) StyleConstants.setForeground(style, foreground);
-		if (bold != null) StyleConstants.setBold(style, bold);
-		if (italic != null) StyleConstants.setItalic(style, italic);
-		return style;
-	}
-
-	private Style getStyle(final OutputEvent event) {
-		final boolean stderr = event.getSource() == Source.STDERR;
-		final boolean contextual = event.isContextual();
-		if (stderr) return contextual ? stderrLocal : stderrGlobal;
-		return contextual ? stdoutLocal : stdoutGlobal;
+	/** Gets the line store, creating it if needed. */
+	private synchronized LineStore store() {
+		if (store == null) store = createStore();
+		return store;
+	}
+
+	/** Asks the user for a file to write, or returns null if canceled. */
+	private File chooseFile(final String title) {
+		final JFileChooser chooser = new JFileChooser();
+		chooser.setDialogTitle(title);
+		chooser.setSelectedFile(new File("console.txt"));
+		final int result = chooser.showSaveDialog(window);
+		return result == JFileChooser.APPROVE_OPTION ? //
+			chooser.getSelectedFile() : null;
+	}
+
+	/** Creates the line store, backed by disk if so configured. */
+	private LineStore createStore() {
+		if (historyDirectory != null) {
+			try {
+				return new MappedLineStore(historyDirectory);
+			}
+			catch (final IOException exc) {
+				log.error("Cannot keep console history in " + historyDirectory, exc);
+				historyDirectory = null;
+			}
+		}
+		return new HeapLineStore();
+	}
+
+	private static File historyDirectoryProperty() {
+		final String path = System.getProperty(HISTORY_DIR_PROPERTY);
+		return path == null ? null : new File(path);
+	}
+
+	/**
+	 * Ensures that a drain of the pending output is scheduled: on the EDT, or
+	 * in the background if the display has not been built yet.
+	 */
+	private void scheduleDrain() {
+		if (!drainScheduled.compareAndSet(false, true)) return; // already queued
+		if (renderer == null) {
+			threadService.run(new Runnable() {
+
+				@Override
+				public void run() {
+					drainDeferred();
+				}
+			});
+			return;
+		}
+		final int latency = maxBatchLatency;
+		if (latency == 0) {
+			threadService.queue(new Runnable() {
+
+				@Override
+				public void run() {
+					drain();
+				}
+			});
+		}
+		else {
+			drainTimer.setInitialDelay(latency);
+			drainTimer.start();
+		}
+	}
+
+	/** Writes the pending output to the display. Called on the EDT. */
+	private void drain() {
+		// NB: Reset the flag first, so that output arriving
+		// while we drain will schedule another drain.
+		drainScheduled.set(false);
+		flush();
+	}
+
+	/**
+	 * Writes the pending output to the store, before the display is built.
+	 * Called on a background thread.
+	 */
+	private void drainDeferred() {
+		drainScheduled.set(false);
+		flushDeferred();
+		// NB: Leave any remainder, or output for a new display, to another drain.
+		if (pending.size() > 0) scheduleDrain();
+	}
+
+	/** Gets the ANSI parser for the given event's output stream. */
+	private AnsiParser parser(final OutputEvent event) {
+		return parsers[event.getSource() == OutputEvent.Source.STDERR ? 1 : 0];
+	}
+
+	/** Writes the given text to the store and display, then clears it. */
+	private void write(final StringBuilder text, final int style) {
+		if (text.length() == 0) return;
+		store.append(text, style);
+		renderer.append(text, style);
+		text.setLength(0);
+	}
+
+	/**
+	 * Evicts the oldest lines, if the scrollback exceeds its line or character
+	 * limits. Called on the EDT.
+	 */
+	private void trimScrollback() {
+		if (historyDirectory != null) return; // keep the complete history
+		final int evicted = store.trim(maxLines, maxChars, teeOffset());
+		if (evicted == 0) return;
+		renderer.evict(evicted);
+		findBar.linesEvicted();
+		droppedLines += evicted;
+		updateDroppedLabel();
+	}
+
+	/**
+	 * Gets the offset of the first character which the tee has yet to write, so
+	 * that it is not evicted, or {@link Long#MAX_VALUE} if there is no tee.
+	 */
+	private long teeOffset() {
+		long offset = Long.MAX_VALUE;
+		final ConsoleTee currentTee = tee;
+		if (currentTee != null) offset = currentTee.getUnwrittenOffset();
+		final ConsoleTee oldTee = closingTee;
+		if (oldTee != null) {
+			if (oldTee.isFinished()) closingTee = null;
+			else offset = Math.min(offset, oldTee.getUnwrittenOffset());
+		}
+		return offset;
+	}
+
+	/** Shows or hides the notice about evicted lines. */
+	private void updateDroppedLabel() {
+		if (droppedLines == 0) {
+			droppedLabel.setVisible(false);
+			return;
+		}
+		droppedLabel.setText(droppedLines + " earlier line" +
+			(droppedLines == 1 ? "" : "s") + " dropped from the scrollback");
+		droppedLabel.setVisible(true);
+	}
+
+	/** Refreshes the metrics status line. */
+	private void updateMetricsLabel() {
+		final StringBuilder sb = new StringBuilder(metrics.toString());
+		final long dropped = pending.getDroppedCount();
+		final long blocked = pending.getBlockedCount();
+		if (dropped > 0) sb.append(", dropped ").append(dropped);
+		if (blocked > 0) sb.append(", blocked ").append(blocked);
+		metricsLabel.setText(sb.toString());
+	}
+
+	// -- Helper classes --
+
+	/** What to do with new output when the output queue is full. */
+	public enum OverflowPolicy {
+		/**
+		 * The producing thread waits until there is space. (The EDT never waits,
+		 * and spills instead.)
+		 */
+		BLOCK,
+		/** The oldest queued output is discarded to make room. */
+		DROP_OLDEST,
+		/** The new output is discarded. */
+		DROP_NEWEST,
+		/** The new output is kept in unbounded storage outside the queue. */
+		SPILL
 	}
 
 }
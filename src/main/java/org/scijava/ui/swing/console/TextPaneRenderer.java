@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextPane;
+import javax.swing.JViewport;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.DefaultHighlighter.DefaultHighlightPainter;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.StyledDocument;
+
+import org.scijava.ui.swing.StaticSwingUtils;
+
+/**
+ * A {@link ConsoleRenderer} which mirrors the console text into the
+ * {@link StyledDocument} of a {@link JTextPane}. Familiar and fully featured,
+ * but its layout and memory costs grow with the amount of text.
+ */
+class TextPaneRenderer implements ConsoleRenderer {
+
+	private final ConsoleStyles styles;
+	private final JTextPane textPane;
+	private StyledDocument doc;
+	private final JPanel textPanel;
+
+	/** The line store whose text is shown. */
+	private LineStore store;
+
+	/** Search matches to highlight, or null for none. */
+	private ConsoleMatches matches;
+
+	private final Highlighter.HighlightPainter matchPainter =
+		new DefaultHighlightPainter(new Color(255, 200, 0));
+
+	/** Tags of the match highlights currently shown. */
+	private final List<Object> highlights = new ArrayList<>();
+
+	/** Whether the highlights follow the scroll position. */
+	private boolean trackingViewport;
+
+	public TextPaneRenderer(final ConsoleStyles styles) {
+		this.styles = styles;
+
+		doc = new DefaultStyledDocument(styles.getStyleContext());
+		textPane = new JTextPane(doc);
+		textPane.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		textPane.setEditable(false);
+
+		// NB: We wrap the JTextPane in a JPanel to disable
+		// the text pane's intelligent line wrapping behavior.
+		// I.e.: we want console lines _not_ to wrap, but instead
+		// for the scroll pane to show a horizontal scroll bar.
+		// Thanks to: https://tips4java.wordpress.com/2009/01/25/no-wrap-text-pane/
+		textPanel = new JPanel();
+		textPanel.setLayout(new BorderLayout());
+		textPanel.add(textPane);
+	}
+
+	// -- TextPaneRenderer methods --
+
+	public JTextPane getTextPane() {
+		return textPane;
+	}
+
+	// -- ConsoleRenderer methods --
+
+	@Override
+	public JComponent getView() {
+		return textPanel;
+	}
+
+	@Override
+	public void load(final LineStore store) {
+		this.store = store;
+		// NB: Build a detached document, so that its view is built only once.
+		final StyledDocument loaded = new DefaultStyledDocument(styles
+			.getStyleContext());
+		synchronized (store) {
+			final long start = store.getLineStart(0);
+			final long end = store.getEndOffset();
+			final int runCount = store.getRunCount();
+			char[] buf = new char[0];
+			for (int run = 0; run < runCount; run++) {
+				final long runStart = Math.max(start, store.getRunStart(run));
+				final long runEnd = run + 1 < runCount ? //
+					store.getRunStart(run + 1) : end;
+				if (runEnd <= runStart) continue;
+				final int length = (int) (runEnd - runStart);
+				if (buf.length < length) buf = new char[length];
+				store.getChars(runStart, length, buf, 0);
+				try {
+					loaded.insertString(loaded.getLength(), new String(buf, 0, length),
+						styles.get(store.getRunStyle(run)));
+				}
+				catch (final BadLocationException exc) {
+					throw new RuntimeException(exc);
+				}
+			}
+		}
+		doc = loaded;
+		textPane.setDocument(doc);
+	}
+
+	@Override
+	public void append(final CharSequence text, final int style) {
+		try {
+			doc.insertString(doc.getLength(), text.toString(), styles.get(style));
+		}
+		catch (final BadLocationException exc) {
+			throw new RuntimeException(exc);
+		}
+	}
+
+	@Override
+	public void evict(final int lines) {
+		final Element root = doc.getDefaultRootElement();
+		final int end = root.getElement(lines - 1).getEndOffset();
+		try {
+			doc.remove(0, end);
+		}
+		catch (final BadLocationException exc) {
+			throw new RuntimeException(exc);
+		}
+	}
+
+	@Override
+	public void clear() {
+		removeHighlights();
+		// NB: Swap in an empty document, rather than removing the text element by
+		// element; the old document and its views are left to the collector.
+		doc = new DefaultStyledDocument(styles.getStyleContext());
+		textPane.setDocument(doc);
+	}
+
+	@Override
+	public void scrollToBottom(final JScrollPane scrollPane) {
+		StaticSwingUtils.scrollToBottom(scrollPane);
+	}
+
+	@Override
+	public void highlight(final ConsoleMatches newMatches) {
+		matches = newMatches;
+		final Container parent = textPanel.getParent();
+		if (!trackingViewport && parent instanceof JViewport) {
+			((JViewport) parent).addChangeListener(new ChangeListener() {
+
+				@Override
+				public void stateChanged(final ChangeEvent e) {
+					updateHighlights();
+				}
+			});
+			trackingViewport = true;
+		}
+		updateHighlights();
+	}
+
+	@Override
+	public void select(final long lineNumber, final int start, final int end) {
+		final int line = (int) (lineNumber - store.getFirstLineNumber());
+		final Element root = doc.getDefaultRootElement();
+		if (line < 0 || line >= root.getElementCount()) return;
+		final int lineStart = root.getElement(line).getStartOffset();
+		textPane.select(lineStart + start, lineStart + end);
+		textPane.getCaret().setSelectionVisible(true);
+		try {
+			final Rectangle r = textPane.modelToView(lineStart + start);
+			if (r != null) textPane.scrollRectToVisible(r);
+		}
+		catch (final BadLocationException exc) {
+			throw new RuntimeException(exc);
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Highlights the matches on the visible lines, replacing old highlights. */
+	private void updateHighlights() {
+		removeHighlights();
+		if (matches == null || matches.size() == 0) return;
+
+		final Rectangle visible = textPane.getVisibleRect();
+		if (visible.isEmpty()) return;
+		final Element root = doc.getDefaultRootElement();
+		final int firstLine = root.getElementIndex(textPane.viewToModel(
+			new Point(visible.x, visible.y)));
+		final int lastLine = root.getElementIndex(textPane.viewToModel(
+			new Point(visible.x, visible.y + visible.height)));
+		final long firstLineNumber = store.getFirstLineNumber();
+		final Highlighter highlighter = textPane.getHighlighter();
+		try {
+			for (long i = matches.indexOf(firstLineNumber + firstLine); //
+				i < matches.end(); i++)
+			{
+				final int line = (int) (matches.getLine(i) - firstLineNumber);
+				if (line > lastLine) break;
+				final int lineStart = root.getElement(line).getStartOffset();
+				highlights.add(highlighter.addHighlight(lineStart + matches
+					.getStart(i), lineStart + matches.getEnd(i), matchPainter));
+			}
+		}
+		catch (final BadLocationException exc) {
+			throw new RuntimeException(exc);
+		}
+	}
+
+	private void removeHighlights() {
+		final Highlighter highlighter = textPane.getHighlighter();
+		for (final Object tag : highlights) {
+			highlighter.removeHighlight(tag);
+		}
+		highlights.clear();
+	}
+
+}
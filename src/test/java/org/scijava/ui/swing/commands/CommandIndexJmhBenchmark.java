@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.scijava.MenuPath;
+import org.scijava.command.CommandInfo;
+import org.scijava.module.ModuleInfo;
+
+/**
+ * JMH benchmarks of the {@link CommandIndex} used by the command finder,
+ * against a synthetic registry of commands with random titles, menu paths,
+ * class names and descriptions.
+ * <p>
+ * Run the {@link #main} method to execute the suite with the GC profiler,
+ * which reports allocation rates alongside timings.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandIndexJmhBenchmark {
+
+	/** Number of results requested per search, as by the command finder. */
+	private static final int LIMIT = 1000;
+
+	private static final String[] WORDS = { "Gaussian", "Blur", "Median",
+		"Filter", "Threshold", "Histogram", "Stack", "Image", "Adjust", "Color",
+		"Binary", "Process", "Analyze", "Measure", "Particles", "Fourier",
+		"Transform", "Rotate", "Scale", "Crop", "Duplicate", "Rename", "Convert",
+		"Merge", "Split", "Channels", "Z Project", "Macro", "Plugin", "Tools" };
+
+	/** A synthetic registry of commands, and its index. */
+	@State(Scope.Benchmark)
+	public static class RegistryState {
+
+		@Param({ "100000" })
+		public int commands;
+
+		public List<ModuleInfo> modules;
+		public CommandIndex index;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			final Random random = new Random(0xc0ffee);
+			modules = new ArrayList<>(commands);
+			for (int i = 0; i < commands; i++) {
+				final String title = word(random) + " " + word(random) + " " + i;
+				final CommandInfo info = new CommandInfo("org.example." + //
+					word(random).replace(" ", "").toLowerCase() + ".Command" + i);
+				info.setMenuPath(new MenuPath(word(random) + ">" + word(random) +
+					">" + title));
+				info.setDescription("Applies the " + word(random).toLowerCase() +
+					" " + word(random).toLowerCase() + " to the active image.");
+				modules.add(info);
+			}
+			index = new CommandIndex(modules);
+		}
+
+		private static String word(final Random random) {
+			return WORDS[random.nextInt(WORDS.length)];
+		}
+	}
+
+	/** A synthetic registry, and a query to search it for. */
+	@State(Scope.Benchmark)
+	public static class QueryState extends RegistryState {
+
+		@Param({ "gauss", "gb", "median filter", "class", "zq",
+			"class:median", "description:gaussian blur" })
+		public String query;
+
+		public String[] tokens;
+		public int[] hits;
+
+		@Override
+		@Setup(Level.Trial)
+		public void setUp() {
+			super.setUp();
+			tokens = CommandIndex.tokens(query);
+			hits = new int[LIMIT];
+		}
+	}
+
+	// -- Benchmarks --
+
+	/** Finds and ranks the best matches for a query. */
+	@Benchmark
+	public int find(final QueryState state) {
+		return state.index.find(state.tokens, LIMIT, state.hits);
+	}
+
+	/** Builds the index of the registry. */
+	@Benchmark
+	public CommandIndex build(final RegistryState state) {
+		return new CommandIndex(state.modules);
+	}
+
+	// -- Main method --
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder() //
+			.include(CommandIndexJmhBenchmark.class.getSimpleName()) //
+			.addProfiler(GCProfiler.class) //
+			.build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.commands;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.scijava.MenuPath;
+import org.scijava.command.CommandInfo;
+import org.scijava.module.ModuleInfo;
+
+/**
+ * Tests {@link CommandIndex}, in particular that narrowing a search within
+ * the matches of an earlier query never loses a match.
+ */
+public class CommandIndexTest {
+
+	private static final String[] WORDS = { "Gaussian", "Blur", "Median",
+		"Filter", "Process", "Image", "Adjust", "Threshold", "Analyze", "Plugins",
+		"Math", "Binary", "Color", "Stacks", "Edit", "Noise", "Subtract",
+		"Background", "Measure", "Find", "Edges", "Sharpen", "Smooth", "Convolve" };
+
+	private static CommandIndex index;
+
+	@BeforeClass
+	public static void setUp() {
+		final Random random = new Random(0xc0ffee);
+		final List<ModuleInfo> modules = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			final String title = word(random) + " " + word(random) + " " + i;
+			final CommandInfo info = new CommandInfo("org.example." + //
+				word(random).toLowerCase() + ".Command" + i);
+			info.setMenuPath(new MenuPath(word(random) + ">" + word(random) + ">" +
+				title));
+			info.setDescription("Applies the " + word(random).toLowerCase() + " " +
+				word(random).toLowerCase() + " to the active image.");
+			modules.add(info);
+		}
+		index = new CommandIndex(modules);
+	}
+
+	@Test
+	public void testIsRefinedBy() {
+		assertRefined(true, "gau", "gaus");
+		assertRefined(true, "gau", "gxaxu");
+		assertRefined(true, "gau blur", "blurry gauss");
+		assertRefined(true, "", "anything");
+		assertRefined(false, "gaus", "gau");
+		assertRefined(false, "gau blur", "gauss");
+		assertRefined(true, "class:med", "class:medi");
+		assertRefined(false, "class:med", "class:mxed");
+		assertRefined(false, "class:med", "title:medi");
+		assertRefined(false, "class:med", "medi");
+	}
+
+	@Test
+	public void testNarrowedMatchesEqualFreshOnes() {
+		final Random random = new Random(7);
+		final String[] prefixes = { "", "title:", "menu:", "class:",
+			"description:" };
+		for (int i = 0; i < 300; i++) {
+			// grow a random query one character at a time, narrowing as we go
+			final String word = WORDS[random.nextInt(WORDS.length)].toLowerCase();
+			final String prefix = prefixes[random.nextInt(prefixes.length)];
+			final String other = random.nextBoolean() ? "" : " " + //
+				WORDS[random.nextInt(WORDS.length)].substring(0, 2).toLowerCase();
+			CommandIndex.Matches previous = null;
+			for (int length = 0; length <= word.length(); length++) {
+				final String[] query = CommandIndex.tokens(prefix + //
+					word.substring(0, length) + other);
+				final CommandIndex.Matches narrowed = index.match(query, previous);
+				final CommandIndex.Matches fresh = index.match(query, null);
+				assertSameMatches(Arrays.toString(query), fresh, narrowed);
+				previous = narrowed;
+			}
+		}
+	}
+
+	@Test
+	public void testUnrefinedQueryIsNotNarrowed() {
+		final CommandIndex.Matches gauss = index.match(tokens("gauss"), null);
+		final String[] query = tokens("median");
+		assertSameMatches("median", index.match(query, null), index.match(query,
+			gauss));
+	}
+
+	@Test
+	public void testFindRanksBestFirst() {
+		final String[] query = tokens("gaussian blur");
+		final int[] hits = new int[10];
+		final int count = index.find(query, hits.length, hits);
+		assertTrue(count > 0);
+		for (int i = 1; i < count; i++) {
+			assertTrue(index.score(query, hits[i - 1]) >= index.score(query,
+				hits[i]));
+		}
+	}
+
+	// -- Helper methods --
+
+	private static String word(final Random random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	private static String[] tokens(final String text) {
+		return CommandIndex.tokens(text);
+	}
+
+	private static void assertRefined(final boolean expected,
+		final String query, final String refined)
+	{
+		final CommandIndex.Matches matches = index.match(tokens(query), null);
+		final String message = "'" + query + "' refined by '" + refined + "'";
+		if (expected) assertTrue(message, matches.isRefinedBy(tokens(refined)));
+		else assertFalse(message, matches.isRefinedBy(tokens(refined)));
+	}
+
+	private static void assertSameMatches(final String message,
+		final CommandIndex.Matches expected, final CommandIndex.Matches actual)
+	{
+		assertEquals(message, expected.size(), actual.size());
+		final int[] expectedHits = new int[index.size()];
+		final int[] actualHits = new int[index.size()];
+		final int count = index.top(expected, expectedHits.length, expectedHits);
+		assertEquals(message, count, index.top(actual, actualHits.length,
+			actualHits));
+		assertArrayEquals(message, expectedHits, actualHits);
+	}
+
+}
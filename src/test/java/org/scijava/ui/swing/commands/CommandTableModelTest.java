@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.scijava.ui.swing.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import org.junit.Test;
+import org.scijava.command.CommandInfo;
+import org.scijava.module.ModuleInfo;
+import org.scijava.ui.swing.commands.CommandFinderPanel.CommandTableModel;
+
+/**
+ * Tests {@link CommandTableModel#setData}, in particular that the rows it
+ * reports as deleted and inserted turn the old list into the new one.
+ */
+public class CommandTableModelTest {
+
+	@Test
+	public void testEventsReproduceNewList() {
+		final Random random = new Random(0xbeef);
+		final List<ModuleInfo> pool = commands(200);
+		final CommandTableModel model = new CommandTableModel(sample(pool,
+			random), null);
+		final Shadow shadow = new Shadow(model);
+		for (int i = 0; i < 500; i++) {
+			final List<ModuleInfo> list = i % 2 == 0 ? sample(pool, random) : //
+				edit(model, pool, random);
+			model.setData(list);
+			assertRows(list, model);
+			assertRows(list, shadow.rows);
+		}
+	}
+
+	@Test
+	public void testRotation() {
+		final List<ModuleInfo> abcd = commands(4);
+		final CommandTableModel model = new CommandTableModel(abcd, null);
+		final Shadow shadow = new Shadow(model);
+		final List<ModuleInfo> bcda = new ArrayList<>(abcd.subList(1, 4));
+		bcda.add(abcd.get(0));
+		model.setData(bcda);
+		assertEquals(Arrays.asList("delete 0-0", "insert 3-3"), shadow.events);
+		assertRows(bcda, shadow.rows);
+	}
+
+	@Test
+	public void testManyChangesReportAllDataChanged() {
+		final List<ModuleInfo> all = commands(100);
+
+		// 25 ranges of deleted rows are reported one by one
+		CommandTableModel model = new CommandTableModel(all, null);
+		Shadow shadow = new Shadow(model);
+		model.setData(every(all, 4));
+		assertEquals(25, shadow.events.size());
+		assertEquals("delete 96-96", shadow.events.get(0));
+		assertRows(every(all, 4), shadow.rows);
+
+		// 50 ranges are too many
+		model = new CommandTableModel(all, null);
+		shadow = new Shadow(model);
+		model.setData(every(all, 2));
+		assertEquals(Collections.singletonList("changed"), shadow.events);
+		assertRows(every(all, 2), shadow.rows);
+	}
+
+	@Test
+	public void testEmptyListsReportAllDataChanged() {
+		final List<ModuleInfo> all = commands(10);
+		final CommandTableModel model = new CommandTableModel(all, null);
+		final Shadow shadow = new Shadow(model);
+		model.setData(Collections.<ModuleInfo> emptyList());
+		model.setData(all);
+		assertEquals(Arrays.asList("changed", "changed"), shadow.events);
+		assertRows(all, shadow.rows);
+	}
+
+	// -- Helper methods --
+
+	private static List<ModuleInfo> commands(final int count) {
+		final List<ModuleInfo> commands = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			commands.add(new CommandInfo("org.example.Command" + i));
+		}
+		return commands;
+	}
+
+	/** Picks some of the given commands, in random order. */
+	private static List<ModuleInfo> sample(final List<ModuleInfo> pool,
+		final Random random)
+	{
+		final List<ModuleInfo> list = new ArrayList<>(pool);
+		Collections.shuffle(list, random);
+		return new ArrayList<>(list.subList(0, random.nextInt(list.size() + 1)));
+	}
+
+	/** Deletes, inserts and moves a few of the model's rows. */
+	private static List<ModuleInfo> edit(final CommandTableModel model,
+		final List<ModuleInfo> pool, final Random random)
+	{
+		final List<ModuleInfo> list = new ArrayList<>();
+		for (int row = 0; row < model.getRowCount(); row++) {
+			list.add(model.get(row));
+		}
+		for (int n = random.nextInt(8); n > 0 && !list.isEmpty(); n--) {
+			final ModuleInfo info = list.remove(random.nextInt(list.size()));
+			if (random.nextBoolean()) list.add(random.nextInt(list.size() + 1), info);
+		}
+		for (int n = random.nextInt(8); n > 0; n--) {
+			final ModuleInfo info = pool.get(random.nextInt(pool.size()));
+			if (!list.contains(info)) list.add(random.nextInt(list.size() + 1), info);
+		}
+		return list;
+	}
+
+	private static List<ModuleInfo> every(final List<ModuleInfo> list,
+		final int step)
+	{
+		final List<ModuleInfo> kept = new ArrayList<>();
+		for (int i = 0; i < list.size(); i++) {
+			if (i % step != 0) kept.add(list.get(i));
+		}
+		return kept;
+	}
+
+	private static void assertRows(final List<ModuleInfo> expected,
+		final CommandTableModel model)
+	{
+		assertEquals(expected.size(), model.getRowCount());
+		for (int row = 0; row < expected.size(); row++) {
+			assertSame(expected.get(row), model.get(row));
+		}
+	}
+
+	private static void assertRows(final List<ModuleInfo> expected,
+		final List<ModuleInfo> rows)
+	{
+		assertEquals(expected.size(), rows.size());
+		for (int row = 0; row < expected.size(); row++) {
+			assertSame(expected.get(row), rows.get(row));
+		}
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * Mirrors the rows of a model by applying only the events it fires, as a
+	 * table's row sorter would.
+	 */
+	private static class Shadow implements TableModelListener {
+
+		private final CommandTableModel model;
+		private final List<ModuleInfo> rows = new ArrayList<>();
+		private final List<String> events = new ArrayList<>();
+
+		private Shadow(final CommandTableModel model) {
+			this.model = model;
+			copy();
+			model.addTableModelListener(this);
+		}
+
+		@Override
+		public void tableChanged(final TableModelEvent e) {
+			final int first = e.getFirstRow(), last = e.getLastRow();
+			if (e.getType() == TableModelEvent.DELETE) {
+				events.add("delete " + first + "-" + last);
+				rows.subList(first, last + 1).clear();
+			}
+			else if (e.getType() == TableModelEvent.INSERT) {
+				events.add("insert " + first + "-" + last);
+				for (int row = first; row <= last; row++) {
+					rows.add(row, model.get(row));
+				}
+			}
+			else {
+				events.add("changed");
+				copy();
+			}
+		}
+
+		private void copy() {
+			rows.clear();
+			for (int row = 0; row < model.getRowCount(); row++) {
+				rows.add(model.get(row));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package org.scijava.ui.swing.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.console.OutputEvent;
+import org.scijava.console.OutputEvent.Source;
+import org.scijava.ui.swing.console.SwingConsolePane.OverflowPolicy;
+
+/**
+ * Tests {@link OutputEventRing}, in particular that events keep their order
+ * under each {@link OverflowPolicy}.
+ */
+public class OutputEventRingTest {
+
+	private static Context context;
+
+	@BeforeClass
+	public static void setUp() {
+		context = new Context(true);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testCapacity() {
+		assertEquals(8, new OutputEventRing(8, OverflowPolicy.SPILL).capacity());
+		assertEquals(16, new OutputEventRing(9, OverflowPolicy.SPILL).capacity());
+		assertEquals(4, new OutputEventRing(3, OverflowPolicy.SPILL).capacity());
+	}
+
+	@Test
+	public void testSpill() {
+		final OutputEventRing ring = new OutputEventRing(8, OverflowPolicy.SPILL);
+		final OutputEvent[] events = events(100);
+		for (int i = 0; i < events.length; i++) {
+			assertTrue(ring.offer(events[i], i));
+		}
+		assertEquals(100, ring.size());
+		assertEquals(92, ring.getSpilledCount());
+		assertEquals(0, ring.getDroppedCount());
+
+		// NB: Events offered after a spill keep spilling, after the earlier ones.
+		final long[] stamp = new long[1];
+		for (int i = 0; i < 50; i++) {
+			assertSame(events[i], ring.poll(stamp));
+			assertEquals(i, stamp[0]);
+		}
+		final OutputEvent last = events(1)[0];
+		assertTrue(ring.offer(last, 100));
+		for (int i = 50; i < events.length; i++) {
+			assertSame(events[i], ring.poll(stamp));
+			assertEquals(i, stamp[0]);
+		}
+		assertSame(last, ring.poll(null));
+		assertNull(ring.poll(null));
+		assertEquals(0, ring.size());
+	}
+
+	@Test
+	public void testDropOldest() {
+		final OutputEventRing ring = //
+			new OutputEventRing(8, OverflowPolicy.DROP_OLDEST);
+		final OutputEvent[] events = events(100);
+		for (int i = 0; i < events.length; i++) {
+			assertTrue(ring.offer(events[i], i));
+		}
+		assertEquals(92, ring.getDroppedCount());
+		assertEquals(8, ring.size());
+		final long[] stamp = new long[1];
+		for (int i = 92; i < events.length; i++) {
+			assertSame(events[i], ring.poll(stamp));
+			assertEquals(i, stamp[0]);
+		}
+		assertNull(ring.poll(null));
+	}
+
+	@Test
+	public void testDropNewest() {
+		final OutputEventRing ring = //
+			new OutputEventRing(8, OverflowPolicy.DROP_NEWEST);
+		final OutputEvent[] events = events(100);
+		for (int i = 0; i < events.length; i++) {
+			assertEquals(i < 8, ring.offer(events[i], i));
+		}
+		assertEquals(92, ring.getDroppedCount());
+		for (int i = 0; i < 8; i++) {
+			assertSame(events[i], ring.poll(null));
+		}
+		assertNull(ring.poll(null));
+	}
+
+	@Test
+	public void testClear() {
+		final OutputEventRing ring = new OutputEventRing(4, OverflowPolicy.SPILL);
+		for (final OutputEvent event : events(10)) {
+			ring.offer(event, 0);
+		}
+		ring.clear();
+		assertEquals(0, ring.size());
+		assertNull(ring.poll(null));
+		assertFalse(ring.getSpilledCount() == 0);
+	}
+
+	@Test
+	public void testConcurrentSpillKeepsThreadOrder() throws Exception {
+		testConcurrentOrder(OverflowPolicy.SPILL);
+	}
+
+	@Test
+	public void testConcurrentBlockKeepsThreadOrder() throws Exception {
+		testConcurrentOrder(OverflowPolicy.BLOCK);
+	}
+
+	// -- Helper methods --
+
+	private static OutputEvent[] events(final int count) {
+		final OutputEvent[] events = new OutputEvent[count];
+		for (int i = 0; i < count; i++) {
+			events[i] = new OutputEvent(context, Source.STDOUT, "line " + i + "\n",
+				false);
+		}
+		return events;
+	}
+
+	/**
+	 * Offers events from several threads while draining the ring, and checks
+	 * that no event is lost and that each thread's events come out in order.
+	 */
+	private static void testConcurrentOrder(final OverflowPolicy policy)
+		throws InterruptedException
+	{
+		final int producers = 4, count = 20000;
+		final OutputEventRing ring = new OutputEventRing(16, policy);
+		final OutputEvent event = events(1)[0];
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] threads = new Thread[producers];
+		for (int t = 0; t < producers; t++) {
+			threads[t] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (final InterruptedException exc) {
+						return;
+					}
+					for (int i = 0; i < count; i++) {
+						ring.offer(event, i);
+					}
+				}
+			}, "producer-" + t);
+			threads[t].start();
+		}
+		start.countDown();
+
+		final Map<Thread, Long> next = new HashMap<>();
+		final long[] stamp = new long[1];
+		final Thread[] thread = new Thread[1];
+		int polled = 0;
+		while (polled < producers * count) {
+			if (ring.poll(stamp, thread) == null) {
+				Thread.yield();
+				continue;
+			}
+			final Long expected = next.get(thread[0]);
+			assertEquals(expected == null ? 0 : expected, stamp[0]);
+			next.put(thread[0], stamp[0] + 1);
+			polled++;
+		}
+		for (final Thread t : threads) {
+			t.join();
+			assertEquals(Long.valueOf(count), next.get(t));
+		}
+		assertNull(ring.poll(null));
+		assertEquals(0, ring.getDroppedCount());
+	}
+
+}
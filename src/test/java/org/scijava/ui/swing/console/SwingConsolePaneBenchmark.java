@@ -118,6 +118,8 @@ public class SwingConsolePaneBenchmark {
 				System.out.println();
 				final SwingSDIUI ui =
 					(SwingSDIUI) context.service(UIService.class).getVisibleUIs().get(0);
+				// NB: Write out any output still waiting in the batch buffer.
+				ui.getConsolePane().flush();
 				final JTextPane textPane = ui.getConsolePane().getTextPane();
 				final Document doc = textPane.getDocument();
 				try {
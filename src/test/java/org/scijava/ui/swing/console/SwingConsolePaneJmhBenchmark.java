@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * SciJava UI components for Java Swing.
+ * %%
+ * Copyright (C) 2010 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.ui.swing.console;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.scijava.Context;
+import org.scijava.console.ConsoleService;
+import org.scijava.console.OutputEvent;
+import org.scijava.console.OutputEvent.Source;
+import org.scijava.thread.ThreadService;
+import org.scijava.ui.swing.console.SwingConsolePane.OverflowPolicy;
+
+/**
+ * JMH benchmarks of the {@link SwingConsolePane} append paths.
+ * <p>
+ * Unlike {@link SwingConsolePaneBenchmark}, these benchmarks do not show any
+ * UI: they run headless, against the console's detached component. The
+ * benchmark thread drains the console itself, standing in for the EDT, so
+ * each operation covers the full path from {@code append} to the display.
+ * Every benchmark runs against both the {@code JTextPane} and the virtualized
+ * renderer.
+ * </p>
+ * <p>
+ * Run the {@link #main} method to execute the suite with the GC profiler,
+ * which reports allocation rates alongside throughput.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SwingConsolePaneJmhBenchmark {
+
+	/** Number of output events appended per benchmark operation. */
+	private static final int BATCH = 1000;
+
+	/** A console pane, along with some output to append to it. */
+	@State(Scope.Benchmark)
+	public static class ConsoleState {
+
+		@Param({ "false", "true" })
+		public boolean virtual;
+
+		public Context context;
+		public SwingConsolePane console;
+
+		public OutputEvent[] stdout;
+		public OutputEvent[] mixed;
+		public OutputEvent[] longLines;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			context = new Context(ThreadService.class, ConsoleService.class);
+			console = new SwingConsolePane(context);
+			console.setVirtual(virtual);
+			// NB: Never drain on the EDT; the benchmark threads drain explicitly.
+			console.setMaxBatchLatency(Integer.MAX_VALUE);
+			console.setOverflowPolicy(OverflowPolicy.BLOCK);
+			// NB: Build the display now; otherwise output is only buffered.
+			console.getScrollPane();
+
+			stdout = new OutputEvent[BATCH];
+			mixed = new OutputEvent[BATCH];
+			longLines = new OutputEvent[BATCH];
+			final StringBuilder longLine = new StringBuilder();
+			for (int i = 0; i < 200; i++) {
+				longLine.append("0123456789");
+			}
+			for (int i = 0; i < BATCH; i++) {
+				final String line = "iteration #" + i + ": some typical output\n";
+				stdout[i] = event(Source.STDOUT, line);
+				mixed[i] = event(i % 2 == 0 ? Source.STDOUT : Source.STDERR, line);
+				// a single 20000-character line, spread over ten events
+				longLines[i] = event(Source.STDOUT, i % 10 == 9 ? longLine + "\n" : //
+					longLine.toString());
+			}
+		}
+
+		@TearDown(Level.Iteration)
+		public void clear() {
+			console.clear();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			context.dispose();
+		}
+
+		private OutputEvent event(final Source source, final String output) {
+			return new OutputEvent(context, source, output, true);
+		}
+	}
+
+	/** A console pane whose scrollback is limited, so lines get evicted. */
+	@State(Scope.Benchmark)
+	public static class BoundedConsoleState extends ConsoleState {
+
+		@Override
+		@Setup(Level.Trial)
+		public void setUp() {
+			super.setUp();
+			console.setMaxLines(10000);
+		}
+	}
+
+	/** A console pane filled with output, ready to be cleared. */
+	@State(Scope.Benchmark)
+	public static class FilledConsoleState extends ConsoleState {
+
+		@Param({ "1000", "10000", "100000" })
+		public int lines;
+
+		@Setup(Level.Invocation)
+		public void fill() {
+			for (int i = 0; i < lines; i += BATCH) {
+				appendAll(console, stdout);
+				console.flush();
+			}
+		}
+	}
+
+	// -- Benchmarks --
+
+	/** Appends plain output from a single thread. */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void appendSingleThread(final ConsoleState state) {
+		appendAll(state.console, state.stdout);
+		state.console.flush();
+	}
+
+	/** Appends output which alternates between stdout and stderr. */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void appendMixedStyles(final ConsoleState state) {
+		appendAll(state.console, state.mixed);
+		state.console.flush();
+	}
+
+	/** Appends very long lines, in pieces. */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void appendLongLines(final ConsoleState state) {
+		appendAll(state.console, state.longLines);
+		state.console.flush();
+	}
+
+	/** Appends output to a console which must evict old lines to keep up. */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void appendWithEviction(final BoundedConsoleState state) {
+		appendAll(state.console, state.stdout);
+		state.console.flush();
+	}
+
+	/** Appends output concurrently from several threads. */
+	@Benchmark
+	@Group("multiThread")
+	@GroupThreads(7)
+	@OperationsPerInvocation(BATCH)
+	public void appendMultiThread(final ConsoleState state) {
+		appendAll(state.console, state.stdout);
+	}
+
+	/** Drains the output of {@link #appendMultiThread}, as the EDT would. */
+	@Benchmark
+	@Group("multiThread")
+	@GroupThreads(1)
+	public void drainMultiThread(final ConsoleState state, final Blackhole bh) {
+		state.console.flush();
+		bh.consume(state.console);
+	}
+
+	/**
+	 * Clears a console containing output. The time taken should not depend on
+	 * the number of lines.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 20)
+	@Measurement(iterations = 20)
+	public void clear(final FilledConsoleState state) {
+		state.console.clear();
+	}
+
+	// -- Main method --
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder() //
+			.include(SwingConsolePaneJmhBenchmark.class.getSimpleName()) //
+			.addProfiler(GCProfiler.class) //
+			.build();
+		new Runner(options).run();
+	}
+
+	// -- Helper methods --
+
+	private static void appendAll(final SwingConsolePane console,
+		final OutputEvent[] events)
+	{
+		for (final OutputEvent event : events) {
+			console.append(event);
+		}
+	}
+
+}